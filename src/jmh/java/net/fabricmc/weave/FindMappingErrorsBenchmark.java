@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.fabricmc.weave;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.index.EntryIndex;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import net.fabricmc.weave.util.EnigmaUtils;
+import net.fabricmc.weave.util.HierarchyIndex;
+import net.fabricmc.weave.util.JarIndexCache;
+import net.fabricmc.weave.util.JarScan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks every reference to a protected or package-private member, as
+ * {@code findMappingErrors} does, once with an empty and once with a filled cache.
+ */
+@State(Scope.Benchmark)
+public class FindMappingErrorsBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int classes;
+
+    private final AccessRule rule = new AccessRule();
+    private final List<AccessFlags> accesses = new ArrayList<>();
+    private final List<EntryReference<?, MethodDefEntry>> references = new ArrayList<>();
+    private JarIndex index;
+    private EntryRemapper mapper;
+    private HierarchyIndex<ClassEntry> hierarchy;
+    private ResolutionCache warmCache;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticInput input = SyntheticInput.generate(classes, 0);
+        Path jar = Files.createTempFile("weave-benchmark", ".jar");
+
+        try {
+            input.writeJar(jar);
+            index = JarIndexCache.index(JarScan.scan(jar), ProgressListener.none());
+        } finally {
+            Files.delete(jar);
+        }
+
+        EntryTree<EntryMapping> mappings = input.getMappings();
+        mapper = EntryRemapper.mapped(index, mappings);
+
+        EntryIndex entryIndex = index.getEntryIndex();
+        for (FieldEntry entry : entryIndex.getFields()) {
+            AccessFlags access = entryIndex.getFieldAccess(entry);
+            if (!access.isPublic() && !access.isPrivate()) {
+                for (EntryReference<FieldEntry, MethodDefEntry> ref : index.getReferenceIndex().getReferencesToField(entry)) {
+                    accesses.add(access);
+                    references.add(ref);
+                }
+            }
+        }
+
+        for (MethodEntry entry : entryIndex.getMethods()) {
+            AccessFlags access = entryIndex.getMethodAccess(entry);
+            if (!access.isPublic() && !access.isPrivate()) {
+                for (EntryReference<MethodEntry, MethodDefEntry> ref : index.getReferenceIndex().getReferencesToMethod(entry)) {
+                    accesses.add(access);
+                    references.add(ref);
+                }
+            }
+        }
+
+        hierarchy = EnigmaUtils.createHierarchyIndex(index);
+        warmCache = new ResolutionCache(mapper);
+        checkAll(warmCache);
+    }
+
+    private int checkAll(ResolutionCache cache) {
+        int invalid = 0;
+        for (int i = 0; i < references.size(); i++) {
+            if (!rule.isRefValid(accesses.get(i), references.get(i), cache, hierarchy)) {
+                invalid++;
+            }
+        }
+        return invalid;
+    }
+
+    @Benchmark
+    public int isRefValidColdCache() {
+        return checkAll(new ResolutionCache(mapper));
+    }
+
+    @Benchmark
+    public int isRefValidWarmCache() {
+        return checkAll(warmCache);
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.MappingDelta;
+import cuchaz.enigma.translation.mapping.serde.MappingFormat;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.HashEntryTree;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.TypeDescriptor;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Generates an obfuscated-looking JAR and matching Enigma mappings of any size, so the
+ * benchmarks don't depend on external data and give comparable results across commits.
+ *
+ * Every class lives in the {@code none/} package, like Enigma's default package classes,
+ * and is mapped into one of a number of named packages. One class in ten is an inner
+ * class, members have mixed access, and method bodies reference members of random other
+ * classes, so cross-package access errors occur. The same count and seed always
+ * produce the same input.
+ */
+public final class SyntheticInput {
+    private static final int FIELDS_PER_CLASS = 4;
+    private static final int METHODS_PER_CLASS = 6;
+    private static final int REFERENCES_PER_METHOD = 4;
+    private static final int CLASSES_PER_PACKAGE = 50;
+    private static final int[] ACCESS = { Opcodes.ACC_PUBLIC, Opcodes.ACC_PROTECTED, 0, Opcodes.ACC_PRIVATE };
+
+    private final List<ClassModel> classes = new ArrayList<>();
+
+    private SyntheticInput() {
+    }
+
+    public static SyntheticInput generate(int classCount, long seed) {
+        SyntheticInput input = new SyntheticInput();
+        Random random = new Random(seed);
+
+        for (int i = 0; i < classCount; i++) {
+            ClassModel model;
+            if (i % 10 == 9) {
+                ClassModel outer = input.classes.get(i - 1);
+                model = new ClassModel(outer.obfName + "$" + letters(i), "Inner" + i, "java/lang/Object");
+            } else {
+                String superName = "java/lang/Object";
+                if (i >= 10 && random.nextBoolean()) {
+                    int j = random.nextInt(i);
+                    superName = input.classes.get(j - j % 10).obfName;
+                }
+
+                model = new ClassModel("none/" + letters(i), "net/example/p" + (i / CLASSES_PER_PACKAGE) + "/Class" + i, superName);
+            }
+
+            input.classes.add(model);
+        }
+
+        for (int i = 0; i < classCount; i++) {
+            ClassModel model = input.classes.get(i);
+
+            for (int k = 0; k < FIELDS_PER_CLASS; k++) {
+                String desc = k == 2 ? "L" + input.randomClass(random).obfName + ";" : k == 3 ? "[I" : k == 1 ? "Ljava/lang/String;" : "I";
+                String deobfName = random.nextInt(10) == 0 ? null : "field_" + i + "_" + k;
+                model.fields.add(new MemberModel(ACCESS[(i + k) % ACCESS.length], letters(k), deobfName, desc));
+            }
+
+            for (int k = 0; k < METHODS_PER_CLASS; k++) {
+                String desc;
+                switch (k % 3) {
+                    case 0:
+                        desc = "()V";
+                        break;
+                    case 1:
+                        desc = "(I)I";
+                        break;
+                    default:
+                        desc = "(L" + input.randomClass(random).obfName + ";)L" + input.randomClass(random).obfName + ";";
+                        break;
+                }
+
+                String deobfName = random.nextInt(10) == 0 ? null : "method_" + i + "_" + k;
+                model.methods.add(new MemberModel(ACCESS[(i + k + 1) % ACCESS.length], letters(FIELDS_PER_CLASS + k), deobfName, desc));
+            }
+        }
+
+        // references are picked once every class has its members
+        for (ClassModel model : input.classes) {
+            for (MemberModel method : model.methods) {
+                for (int r = 0; r < REFERENCES_PER_METHOD; r++) {
+                    ClassModel target = input.randomClass(random);
+                    List<MemberModel> members = random.nextBoolean() ? target.fields : target.methods;
+                    method.references.add(new Reference(target, members.get(random.nextInt(members.size()))));
+                }
+            }
+        }
+
+        return input;
+    }
+
+    public List<ClassModel> getClasses() {
+        return classes;
+    }
+
+    public EntryTree<EntryMapping> getMappings() {
+        EntryTree<EntryMapping> mappings = new HashEntryTree<>();
+
+        for (ClassModel model : classes) {
+            ClassEntry classEntry = new ClassEntry(model.obfName);
+            mappings.insert(classEntry, new EntryMapping(model.deobfName));
+
+            for (MemberModel field : model.fields) {
+                if (field.deobfName != null) {
+                    mappings.insert(new FieldEntry(classEntry, field.obfName, new TypeDescriptor(field.desc)), new EntryMapping(field.deobfName));
+                }
+            }
+
+            for (MemberModel method : model.methods) {
+                if (method.deobfName != null) {
+                    mappings.insert(new MethodEntry(classEntry, method.obfName, new MethodDescriptor(method.desc)), new EntryMapping(method.deobfName));
+                }
+            }
+        }
+
+        return mappings;
+    }
+
+    public void writeJar(Path path) throws IOException {
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(path))) {
+            for (ClassModel model : classes) {
+                jar.putNextEntry(new JarEntry(model.obfName + ".class"));
+                jar.write(toBytes(model));
+                jar.closeEntry();
+            }
+        }
+    }
+
+    private ClassModel randomClass(Random random) {
+        return classes.get(random.nextInt(classes.size()));
+    }
+
+    private static byte[] toBytes(ClassModel model) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, model.obfName, null, model.superName, null);
+
+        for (MemberModel field : model.fields) {
+            writer.visitField(field.access, field.obfName, field.desc, null, null).visitEnd();
+        }
+
+        MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, model.superName, "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(1, 1);
+        init.visitEnd();
+
+        for (MemberModel method : model.methods) {
+            MethodVisitor mv = writer.visitMethod(method.access, method.obfName, method.desc, null, null);
+            mv.visitCode();
+
+            for (Reference ref : method.references) {
+                mv.visitInsn(Opcodes.ACONST_NULL);
+
+                if (ref.member.desc.startsWith("(")) {
+                    if (ref.member.desc.startsWith("(I")) {
+                        mv.visitInsn(Opcodes.ICONST_0);
+                    } else if (ref.member.desc.startsWith("(L")) {
+                        mv.visitInsn(Opcodes.ACONST_NULL);
+                    }
+
+                    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, ref.owner.obfName, ref.member.obfName, ref.member.desc, false);
+                    if (!ref.member.desc.endsWith("V")) {
+                        mv.visitInsn(Opcodes.POP);
+                    }
+                } else {
+                    mv.visitFieldInsn(Opcodes.GETFIELD, ref.owner.obfName, ref.member.obfName, ref.member.desc);
+                    mv.visitInsn(Opcodes.POP);
+                }
+            }
+
+            if (method.desc.endsWith("V")) {
+                mv.visitInsn(Opcodes.RETURN);
+            } else if (method.desc.endsWith("I")) {
+                mv.visitInsn(Opcodes.ICONST_0);
+                mv.visitInsn(Opcodes.IRETURN);
+            } else {
+                mv.visitInsn(Opcodes.ACONST_NULL);
+                mv.visitInsn(Opcodes.ARETURN);
+            }
+
+            mv.visitMaxs(3, 2);
+            mv.visitEnd();
+        }
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static String letters(int index) {
+        StringBuilder builder = new StringBuilder();
+        do {
+            builder.append((char) ('a' + index % 26));
+            index = index / 26 - 1;
+        } while (index >= 0);
+        return builder.reverse().toString();
+    }
+
+    /**
+     * Writes a synthetic input to disk, for running the commands themselves on it.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: <class count> <output jar> <output mappings directory> [seed]");
+            return;
+        }
+
+        SyntheticInput input = generate(Integer.parseInt(args[0]), args.length > 3 ? Long.parseLong(args[3]) : 0);
+        input.writeJar(Paths.get(args[1]));
+
+        EntryTree<EntryMapping> mappings = input.getMappings();
+        MappingFormat.ENIGMA_DIRECTORY.write(mappings, MappingDelta.added(mappings), Paths.get(args[2]), ProgressListener.none());
+    }
+
+    public static final class ClassModel {
+        public final String obfName;
+        public final String deobfName;
+        public final String superName;
+        public final List<MemberModel> fields = new ArrayList<>();
+        public final List<MemberModel> methods = new ArrayList<>();
+
+        private ClassModel(String obfName, String deobfName, String superName) {
+            this.obfName = obfName;
+            this.deobfName = deobfName;
+            this.superName = superName;
+        }
+    }
+
+    public static final class MemberModel {
+        public final int access;
+        public final String obfName;
+        public final String deobfName;
+        public final String desc;
+        public final List<Reference> references = new ArrayList<>();
+
+        private MemberModel(int access, String obfName, String deobfName, String desc) {
+            this.access = access;
+            this.obfName = obfName;
+            this.deobfName = deobfName;
+            this.desc = desc;
+        }
+    }
+
+    public static final class Reference {
+        public final ClassModel owner;
+        public final MemberModel member;
+
+        private Reference(ClassModel owner, MemberModel member) {
+            this.owner = owner;
+            this.member = member;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.fabricmc.weave.util;
+
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.tree.EntryTreeNode;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import net.fabricmc.weave.SyntheticInput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class EnigmaUtilsBenchmark {
+    @Param({ "1000", "10000" })
+    public int classes;
+
+    private final List<Entry<?>> entries = new ArrayList<>();
+    private final List<String[]> serialized = new ArrayList<>();
+    private final StringBuilder builder = new StringBuilder();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        for (EntryTreeNode<EntryMapping> node : SyntheticInput.generate(classes, 0).getMappings()) {
+            if (node.getValue() != null) {
+                entries.add(node.getEntry());
+                serialized.add(EnigmaUtils.serializeEntry(node.getEntry(), false, node.getValue().getTargetName()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void serializeEntry(Blackhole blackhole) {
+        for (Entry<?> entry : entries) {
+            blackhole.consume(EnigmaUtils.serializeEntry(entry, true, "target"));
+        }
+    }
+
+    @Benchmark
+    public int appendEntry() throws IOException {
+        builder.setLength(0);
+        for (Entry<?> entry : entries) {
+            EnigmaUtils.appendEntry(builder, entry, true);
+            builder.append("\ttarget\n");
+        }
+        return builder.length();
+    }
+
+    @Benchmark
+    public void deserializeEntry(Blackhole blackhole) {
+        for (String[] data : serialized) {
+            blackhole.consume(EnigmaUtils.deserializeEntry(data));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.fabricmc.weave.util;
+
+import net.fabricmc.weave.SyntheticInput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+@State(Scope.Benchmark)
+public class UtilsBenchmark {
+    @Param({ "1000", "10000" })
+    public int classes;
+
+    private final List<String> fieldDescs = new ArrayList<>();
+    private final List<String> methodDescs = new ArrayList<>();
+    private final List<String> first = new ArrayList<>();
+    private final List<String> second = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<String> names = new ArrayList<>();
+
+        for (SyntheticInput.ClassModel model : SyntheticInput.generate(classes, 0).getClasses()) {
+            names.add(model.obfName);
+            for (SyntheticInput.MemberModel field : model.fields) {
+                fieldDescs.add(field.desc);
+            }
+            for (SyntheticInput.MemberModel method : model.methods) {
+                methodDescs.add(method.desc);
+            }
+        }
+
+        // two orderings of the class names that agree on the order of their common
+        // elements, each with some names only it contains, like two sides of a merge
+        Random random = new Random(0);
+        for (String name : names) {
+            int side = random.nextInt(8);
+            if (side != 0) {
+                first.add(name);
+            }
+            if (side != 1) {
+                second.add(name);
+            }
+        }
+    }
+
+    @Benchmark
+    public void mapDesc(Blackhole blackhole) {
+        for (String desc : fieldDescs) {
+            blackhole.consume(Utils.NONE_PREFIX_REMOVER.mapDesc(desc));
+        }
+    }
+
+    @Benchmark
+    public void mapMethodDesc(Blackhole blackhole) {
+        for (String desc : methodDescs) {
+            blackhole.consume(Utils.NONE_PREFIX_REMOVER.mapMethodDesc(desc));
+        }
+    }
+
+    @Benchmark
+    public List<String> mergePreserveOrder() {
+        return Utils.mergePreserveOrder(first, second);
+    }
+}
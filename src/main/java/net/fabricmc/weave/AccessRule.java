@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
+import net.fabricmc.weave.util.HierarchyIndex;
+
+/**
+ * Package-private and protected members must still be accessible from where they are
+ * used once classes are moved into their deobfuscated packages.
+ */
+class AccessRule implements MappingRule {
+    @Override
+    public void visitReference(EntryReference<?, MethodDefEntry> ref, AccessFlags access, RuleContext context, Reporter reporter) {
+        if (access.isPublic() || access.isPrivate()) {
+            return;
+        }
+
+        if (!isRefValid(access, ref, context.getCache(), context.getHierarchy())) {
+            reporter.report(ref.entry, ref.context.getContainingClass(), ref.entry.getContainingClass());
+        }
+    }
+
+    @Override
+    public String getMessage(MappingError error, RuleContext context) {
+        ResolutionCache cache = context.getCache();
+        return "ERROR: Must be in one package: " + cache.deobfuscate(error.getContextClass()) + " and " + cache.deobfuscate(error.getTargetClass());
+    }
+
+    @Override
+    public String getCause(MappingError error, RuleContext context) {
+        String type = error.getEntry() instanceof FieldEntry ? "field " : "method ";
+        return type + context.getMapper().deobfuscate(error.getEntry()).getName();
+    }
+
+    boolean isRefValid(AccessFlags entryAcc, EntryReference<?, MethodDefEntry> ref, ResolutionCache cache, HierarchyIndex<ClassEntry> hierarchy) {
+        ClassEntry contextClass = ref.context.getContainingClass();
+        ClassEntry entryClass = ref.entry.getContainingClass();
+
+        String packageCtx = cache.getDeobfPackage(contextClass);
+        String packageEntry = cache.getDeobfPackage(entryClass);
+        boolean samePackage = (packageCtx == null && packageEntry == null) || (packageCtx != null && packageCtx.equals(packageEntry));
+        if (samePackage) {
+            return true;
+        } else if (entryAcc.isProtected()) {
+            // TODO: Is this valid?
+            for (ClassEntry outerClass : cache.getOuterClasses(contextClass)) {
+                // strict subtypes only, as isSubtypeOf also holds for the class itself
+                if (!outerClass.equals(entryClass) && hierarchy.isSubtypeOf(outerClass, entryClass)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
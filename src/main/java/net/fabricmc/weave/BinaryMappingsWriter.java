@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.translation.MappingTranslator;
+import cuchaz.enigma.translation.Translator;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.VoidEntryResolver;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.EntryTreeNode;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import net.fabricmc.weave.util.BinaryMappings;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes Enigma mappings in the binary format read by {@link BinaryMappings}, with the
+ * same classes and members as {@link TinyMappingsWriter} would write.
+ */
+public class BinaryMappingsWriter implements FileMappingsWriter {
+    private final String nameObf;
+    private final String nameDeobf;
+
+    public BinaryMappingsWriter(String nameObf, String nameDeobf) {
+        this.nameObf = nameObf;
+        this.nameDeobf = nameDeobf;
+    }
+
+    @Override
+    public String writeFile(EntryTree<EntryMapping> mappings, Path path, ProgressListener progress) throws IOException {
+        BinaryMappings.Builder builder = new BinaryMappings.Builder(nameObf, nameDeobf);
+        Translator translator = new MappingTranslator(mappings, VoidEntryResolver.INSTANCE);
+        List<EntryTreeNode<EntryMapping>> roots = TinyMappingsWriter.getRootNodes(mappings);
+
+        progress.init(roots.size(), "Writing binary mappings");
+        int done = 0;
+        for (EntryTreeNode<EntryMapping> node : roots) {
+            addClass(builder, node, translator);
+            progress.step(++done, node.getEntry().getName());
+        }
+
+        return builder.write(path);
+    }
+
+    private void addClass(BinaryMappings.Builder builder, EntryTreeNode<EntryMapping> node, Translator translator) {
+        ClassEntry entry = (ClassEntry) node.getEntry();
+        EntryMapping mapping = node.getValue();
+
+        if (mapping != null && !entry.getName().equals(mapping.getTargetName())) {
+            builder.addClass(entry.getFullName(), translator.translate(entry).getFullName());
+        }
+
+        for (EntryTreeNode<EntryMapping> child : node.getChildNodes()) {
+            Entry<?> childEntry = child.getEntry();
+            EntryMapping childMapping = child.getValue();
+
+            if (childEntry instanceof ClassEntry) {
+                addClass(builder, child, translator);
+            } else if (childMapping != null && !childEntry.getName().equals(childMapping.getTargetName())) {
+                if (childEntry instanceof FieldEntry) {
+                    builder.addField(entry.getFullName(), childEntry.getName(), ((FieldEntry) childEntry).getDesc().toString(), childMapping.getTargetName());
+                } else if (childEntry instanceof MethodEntry) {
+                    builder.addMethod(entry.getFullName(), childEntry.getName(), ((MethodEntry) childEntry).getDesc().toString(), childMapping.getTargetName());
+                }
+            }
+        }
+    }
+}
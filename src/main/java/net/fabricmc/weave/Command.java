@@ -16,6 +16,10 @@
 
 package net.fabricmc.weave;
 
+/**
+ * A command line command. Commands are registered through a {@link CommandProvider}, whose
+ * {@link CommandDescriptor}s give their usage, and are created when first dispatched.
+ */
 public abstract class Command {
     public final String name;
 
@@ -23,7 +27,9 @@ public abstract class Command {
         this.name = name;
     }
 
-    public abstract String getHelpString();
-    public abstract boolean isArgumentCountValid(int count);
-    public abstract void run(String[] args) throws Exception;
+    public abstract void run(String[] args, CommandContext context) throws Exception;
+
+    public void run(String[] args) throws Exception {
+        run(args, new CommandContext());
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * State shared by the commands run in one process: where they print to, and the
+ * inputs (JAR indexes, parsed mappings...) they have already loaded.
+ *
+ * Loaded values are keyed by a kind and the paths they were loaded from, and are
+ * loaded again once the modification time or size of any of those paths changes.
+ * Loaded values may be used by several commands at once and must not be modified.
+ */
+public class CommandContext {
+    private final Map<String, Cached> cache;
+    private final PrintStream out;
+    private final Metrics metrics;
+
+    public CommandContext() {
+        this(Metrics.disabled());
+    }
+
+    public CommandContext(Metrics metrics) {
+        this(new ConcurrentHashMap<>(), System.out, metrics);
+    }
+
+    private CommandContext(Map<String, Cached> cache, PrintStream out, Metrics metrics) {
+        this.cache = cache;
+        this.out = out;
+        this.metrics = metrics;
+    }
+
+    public PrintStream out() {
+        return out;
+    }
+
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @return a context sharing this context's loaded inputs and metrics but printing to a different stream
+     */
+    public CommandContext withOutput(PrintStream out) {
+        return new CommandContext(cache, out, metrics);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String kind, List<Path> inputs, Loader<T> loader) throws Exception {
+        StringBuilder key = new StringBuilder(kind);
+        for (Path input : inputs) {
+            key.append('\n').append(input.toAbsolutePath().normalize());
+        }
+
+        Cached cached = cache.computeIfAbsent(key.toString(), k -> new Cached());
+        return (T) cached.get(fingerprint(inputs), loader);
+    }
+
+    private static String fingerprint(List<Path> inputs) throws IOException {
+        StringBuilder fingerprint = new StringBuilder();
+
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                long lastModified = Files.getLastModifiedTime(input).toMillis();
+                long count = 0;
+                long size = 0;
+
+                try (Stream<Path> files = Files.walk(input)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                        lastModified = Math.max(lastModified, attributes.lastModifiedTime().toMillis());
+                        size += attributes.size();
+                        count++;
+                    }
+                }
+
+                fingerprint.append(lastModified).append(':').append(count).append(':').append(size).append(';');
+            } else if (Files.exists(input)) {
+                fingerprint.append(Files.getLastModifiedTime(input).toMillis()).append(':').append(Files.size(input)).append(';');
+            } else {
+                fingerprint.append("missing;");
+            }
+        }
+
+        return fingerprint.toString();
+    }
+
+    public interface Loader<T> {
+        T load() throws Exception;
+    }
+
+    private static class Cached {
+        private String fingerprint;
+        private Object value;
+
+        private synchronized Object get(String currentFingerprint, Loader<?> loader) throws Exception {
+            if (value == null || !currentFingerprint.equals(fingerprint)) {
+                value = null;
+                value = loader.load();
+                fingerprint = currentFingerprint;
+            }
+
+            return value;
+        }
+    }
+}
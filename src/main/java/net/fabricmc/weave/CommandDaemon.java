@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import net.fabricmc.weave.util.Arguments;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Keeps one {@link CommandContext} alive and runs commands against it, so that JAR
+ * indexes and mappings are only loaded again when their files change.
+ *
+ * Commands are read one per line, from stdin or from connections to a loopback port.
+ * Arguments are separated by tabs if the line contains any, otherwise by spaces. The
+ * output of every command ends with a {@code >>> OK} or {@code >>> ERROR <message>}
+ * line. {@code exit} closes the connection and {@code shutdown} stops the daemon.
+ */
+public class CommandDaemon extends Command {
+    private static final String RESPONSE_PREFIX = ">>> ";
+
+    private volatile boolean shutdown;
+    private volatile ServerSocket server;
+
+    public CommandDaemon() {
+        super("daemon");
+    }
+
+    @Override
+    public void run(String[] args, CommandContext context) throws Exception {
+        Arguments arguments = Arguments.parse(args);
+
+        if (arguments.has("port")) {
+            serve(arguments.intOption("port", 0), context);
+        } else {
+            context.out().println(RESPONSE_PREFIX + "READY");
+            handle(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), context);
+        }
+    }
+
+    private void serve(int port, CommandContext context) throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+        try {
+            context.out().println("Listening on " + server.getInetAddress().getHostAddress() + ":" + server.getLocalPort());
+
+            while (!shutdown) {
+                Socket socket = server.accept();
+
+                Thread thread = new Thread(() -> {
+                    try (Socket s = socket) {
+                        PrintStream out = new PrintStream(s.getOutputStream(), true, "UTF-8");
+                        handle(new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8)), context.withOutput(out));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+
+                    if (shutdown) {
+                        closeServer();
+                    }
+                }, "weave-daemon-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (SocketException e) {
+            if (!shutdown) {
+                throw e;
+            }
+        } finally {
+            closeServer();
+        }
+    }
+
+    /**
+     * Stops accepting connections, which ends the accept loop of {@link #serve}.
+     */
+    private void closeServer() {
+        try {
+            server.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void handle(BufferedReader in, CommandContext context) throws IOException {
+        String line;
+        while (!shutdown && (line = in.readLine()) != null) {
+            String[] args = line.indexOf('\t') >= 0 ? line.split("\t") : line.trim().split(" +");
+            if (args.length == 0 || args[0].isEmpty()) {
+                continue;
+            }
+
+            if (args[0].equals("exit")) {
+                return;
+            } else if (args[0].equals("shutdown")) {
+                shutdown = true;
+                context.out().println(RESPONSE_PREFIX + "OK");
+                return;
+            }
+
+            execute(args, context);
+        }
+    }
+
+    private void execute(String[] args, CommandContext context) {
+        PrintStream out = context.out();
+        CommandDescriptor command = Main.getCommand(args[0]);
+        String[] argsCommand = Arrays.copyOfRange(args, 1, args.length);
+
+        if (command == null || command.getClassName().equals(CommandDaemon.class.getName())) {
+            out.println(RESPONSE_PREFIX + "ERROR Unknown command " + args[0]);
+        } else if (!command.isArgumentCountValid(Arguments.parse(argsCommand).size())) {
+            out.println(RESPONSE_PREFIX + "ERROR Usage: " + command.getName() + " " + command.getHelpString());
+        } else {
+            try {
+                command.getCommand().run(argsCommand, context);
+                out.println(RESPONSE_PREFIX + "OK");
+            } catch (Exception e) {
+                e.printStackTrace(out);
+                out.println(RESPONSE_PREFIX + "ERROR " + e);
+            }
+        }
+
+        out.flush();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+/**
+ * Names, usage and implementation class of a command. The implementation is only loaded
+ * when the command is first dispatched, so listing commands doesn't load any of them.
+ */
+public final class CommandDescriptor {
+    private final String name;
+    private final String helpString;
+    private final int minArguments;
+    private final int maxArguments;
+    private final String className;
+    private final boolean requiresEnigma;
+    private volatile Command command;
+
+    /**
+     * @param maxArguments the maximum number of positional arguments, or -1 for no maximum
+     */
+    public CommandDescriptor(String name, String helpString, int minArguments, int maxArguments, String className, boolean requiresEnigma) {
+        this.name = name;
+        this.helpString = helpString;
+        this.minArguments = minArguments;
+        this.maxArguments = maxArguments;
+        this.className = className;
+        this.requiresEnigma = requiresEnigma;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelpString() {
+        return helpString;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public boolean isArgumentCountValid(int count) {
+        return count >= minArguments && (maxArguments < 0 || count <= maxArguments);
+    }
+
+    public boolean isAvailable() {
+        return !requiresEnigma || Main.isEnigmaPresent();
+    }
+
+    /**
+     * @return the command, created on the first call
+     */
+    public Command getCommand() {
+        if (command == null) {
+            synchronized (this) {
+                if (command == null) {
+                    try {
+                        command = Class.forName(className).asSubclass(Command.class).getConstructor().newInstance();
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException("Could not create command " + name, e);
+                    }
+                }
+            }
+        }
+        return command;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import net.fabricmc.weave.util.Arguments;
+import net.fabricmc.weave.util.EnigmaUtils;
+import net.fabricmc.weave.util.MappingDiff;
+import net.fabricmc.weave.util.TinyMappings;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Prints the differences between two sets of mappings, one per line: {@code +} for an
+ * added mapping, {@code -} for a removed one and {@code ~} for a changed target name,
+ * followed by the mapping as a Tiny v1 line (see {@link MappingDiff}).
+ *
+ * With {@code --delta}, the Enigma mapping directory given, which must hold the old
+ * mappings, is updated to the new ones by rewriting only the files of the classes that
+ * changed, so an incremental tinyify of it only re-serializes those.
+ */
+public class CommandDiffMappings extends Command {
+    public CommandDiffMappings() {
+        super("diffMappings");
+    }
+
+    @Override
+    public void run(String[] args, CommandContext context) throws Exception {
+        Arguments arguments = Arguments.parse(args);
+        File olderFile = new File(arguments.get(0));
+        File newerFile = new File(arguments.get(1));
+        String deltaDir = arguments.option("delta", null);
+
+        if (!olderFile.exists()) {
+            throw new FileNotFoundException("Mappings " + olderFile + " could not be found!");
+        }
+
+        if (!newerFile.exists()) {
+            throw new FileNotFoundException("Mappings " + newerFile + " could not be found!");
+        }
+
+        MappingDiff.Source older = readSource(context, arguments, olderFile.toPath());
+        MappingDiff.Source newer = readSource(context, arguments, newerFile.toPath());
+
+        if (deltaDir != null && !new File(deltaDir).isDirectory()) {
+            throw new FileNotFoundException("Enigma mapping directory " + deltaDir + " could not be found!");
+        }
+
+        if (deltaDir != null && (!(older instanceof EnigmaDiffSource) || !(newer instanceof EnigmaDiffSource))) {
+            throw new IllegalArgumentException("--delta needs Enigma mappings on both sides!");
+        }
+
+        Set<String> changedClasses = new LinkedHashSet<>();
+        try (Metrics.Phase phase = context.metrics().start("diff")) {
+            PrintStream out = context.out();
+            long[] count = new long[1];
+
+            MappingDiff.diff(older, newer, new MappingDiff.Listener() {
+                @Override
+                public void added(String key, String target) {
+                    out.println("+\t" + key + '\t' + target);
+                    changed(key);
+                }
+
+                @Override
+                public void removed(String key, String target) {
+                    out.println("-\t" + key + '\t' + target);
+                    changed(key);
+                }
+
+                @Override
+                public void renamed(String key, String oldTarget, String newTarget) {
+                    out.println("~\t" + key + '\t' + oldTarget + '\t' + newTarget);
+                    changed(key);
+                }
+
+                private void changed(String key) {
+                    count[0]++;
+                    if (deltaDir != null) {
+                        // the owner is the second field of every row
+                        int start = key.indexOf('\t') + 1;
+                        int end = key.indexOf('\t', start);
+                        changedClasses.add(MappingDiff.getTopLevelClass(end >= 0 ? key.substring(start, end) : key.substring(start)));
+                    }
+                }
+            });
+
+            phase.setItems(count[0]);
+        }
+
+        if (deltaDir != null) {
+            context.out().println("Writing " + changedClasses.size() + " changed classes to " + deltaDir + "...");
+            try (Metrics.Phase phase = context.metrics().start("writing")) {
+                ((EnigmaDiffSource) newer).writeDelta((EnigmaDiffSource) older, changedClasses, new File(deltaDir).toPath());
+                phase.setItems(changedClasses.size());
+            }
+        }
+    }
+
+    private static MappingDiff.Source readSource(CommandContext context, Arguments arguments, Path path) throws Exception {
+        if (CommandRemapJar.isTiny(path)) {
+            TinyMappings mappings = CommandRemapJar.readTiny(context, path);
+            int from = CommandRemapJar.getNamespace(mappings, arguments.option("from", null), 0);
+            int to = CommandRemapJar.getNamespace(mappings, arguments.option("to", null), 1);
+            return MappingDiff.of(mappings, from, to);
+        } else if (Main.isEnigmaPresent()) {
+            return new EnigmaDiffSource(EnigmaUtils.getMappings(context, path));
+        } else {
+            throw new IllegalArgumentException("Reading Enigma mappings requires Enigma on the classpath!");
+        }
+    }
+}
@@ -16,139 +16,245 @@
 
 package net.fabricmc.weave;
 
-import cuchaz.enigma.Enigma;
-import cuchaz.enigma.EnigmaProject;
-import cuchaz.enigma.ProgressListener;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import cuchaz.enigma.analysis.EntryReference;
 import cuchaz.enigma.analysis.index.EntryIndex;
-import cuchaz.enigma.analysis.index.InheritanceIndex;
 import cuchaz.enigma.analysis.index.JarIndex;
 import cuchaz.enigma.analysis.index.ReferenceIndex;
 import cuchaz.enigma.translation.mapping.EntryMapping;
-import cuchaz.enigma.translation.mapping.EntryRemapper;
-import cuchaz.enigma.translation.mapping.serde.MappingFormat;
 import cuchaz.enigma.translation.mapping.tree.EntryTree;
 import cuchaz.enigma.translation.representation.AccessFlags;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 import cuchaz.enigma.translation.representation.entry.FieldEntry;
 import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
 import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import net.fabricmc.weave.util.Arguments;
+import net.fabricmc.weave.util.EnigmaUtils;
+import net.fabricmc.weave.util.HierarchyIndex;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
+/**
+ * Validates mappings against a JAR with the default {@link MappingRule}s, or those
+ * given with {@code --rules}, in a single traversal of the JAR index. Only the access
+ * rule runs by default, the others have to be asked for.
+ *
+ * Errors are printed grouped by message as text, or streamed as they are found as
+ * JSON lines or tab-separated records (see {@link ErrorOutput}).
+ */
 public class CommandFindMappingErrors extends Command {
+    private static final int MIN_CHUNK_SIZE = 256;
+    private static final int DEFAULT_SPILL_THRESHOLD = 1 << 20;
+    private static final Map<String, Supplier<MappingRule>> RULES = new LinkedHashMap<>();
+    private static final Set<String> DEFAULT_RULES = new LinkedHashSet<>();
+
+    static {
+        addRule("access", AccessRule::new, true);
+        addRule("collisions", NameCollisionRule::new, false);
+        addRule("overrides", OverrideRule::new, false);
+        addRule("duplicateClasses", DuplicateClassRule::new, false);
+    }
+
     public CommandFindMappingErrors() {
         super("findMappingErrors");
     }
 
-    @Override
-    public String getHelpString() {
-        return "<obf jar> <mappings>";
+    /**
+     * Registers a rule, which can be run with {@code --rules}.
+     *
+     * @param byDefault whether the rule also runs when {@code --rules} isn't given
+     */
+    public static void addRule(String name, Supplier<MappingRule> rule, boolean byDefault) {
+        RULES.put(name, rule);
+        if (byDefault) {
+            DEFAULT_RULES.add(name);
+        } else {
+            DEFAULT_RULES.remove(name);
+        }
     }
 
-    @Override
-    public boolean isArgumentCountValid(int count) {
-        return count == 2;
-    }
+    private static Map<String, MappingRule> createRules(String names) {
+        Map<String, MappingRule> rules = new LinkedHashMap<>();
+        if (names == null) {
+            for (String name : DEFAULT_RULES) {
+                rules.put(name, RULES.get(name).get());
+            }
+            return rules;
+        }
 
-    private void addError(SortedMap<String, Set<String>> errorStrings, String error, String cause) {
-        if (!errorStrings.containsKey(error)) {
-            errorStrings.put(error, new HashSet<>());
+        for (String name : names.split(",")) {
+            Supplier<MappingRule> rule = RULES.get(name);
+            if (rule == null) {
+                throw new IllegalArgumentException("Unknown rule " + name + ", expected one of " + RULES.keySet());
+            }
+            rules.put(name, rule.get());
         }
-        errorStrings.get(error).add(cause);
+        return rules;
     }
 
-    private boolean isRefValid(AccessFlags entryAcc, EntryReference ref, EnigmaProject enigmaProject) {
-        EntryReference refDeobf = enigmaProject.getMapper().deobfuscate(ref);
-        String packageCtx = refDeobf.context.getContainingClass().getPackageName();
-        String packageEntry = refDeobf.entry.getContainingClass().getPackageName();
-        boolean samePackage = (packageCtx == null && packageEntry == null) || (packageCtx != null && packageCtx.equals(packageEntry));
-        if (samePackage) {
-            return true;
-        } else if (entryAcc.isProtected()) {
-            // TODO: Is this valid?
-            InheritanceIndex inheritanceIndex = enigmaProject.getJarIndex().getInheritanceIndex();
-
-            for (ClassEntry outerClass : getOuterClasses(ref.context.getContainingClass())) {
-                Set<ClassEntry> callerAncestors = inheritanceIndex.getAncestors(outerClass);
-                if (callerAncestors.contains(ref.entry.getContainingClass())) {
-                    return true;
+    /**
+     * Runs the tasks and passes their results to {@code consumer} in submission order,
+     * each as soon as it and the tasks before it are done.
+     */
+    private static <T> void runTasks(List<Callable<T>> tasks, int threads, ResultConsumer<T> consumer) throws Exception {
+        if (threads <= 1) {
+            for (Callable<T> task : tasks) {
+                consumer.accept(task.call());
+            }
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                List<Future<T>> futures = new ArrayList<>(tasks.size());
+                for (Callable<T> task : tasks) {
+                    futures.add(pool.submit(task));
+                }
+
+                for (Future<T> future : futures) {
+                    try {
+                        consumer.accept(future.get());
+                    } catch (ExecutionException e) {
+                        Throwables.throwIfInstanceOf(e.getCause(), Exception.class);
+                        Throwables.throwIfUnchecked(e.getCause());
+                        throw e;
+                    }
                 }
+            } finally {
+                pool.shutdownNow();
             }
         }
-
-        return false;
     }
 
-    private Collection<ClassEntry> getOuterClasses(ClassEntry entry) {
-        Collection<ClassEntry> outerClasses = new ArrayList<>();
+    private interface ResultConsumer<T> {
+        void accept(T result) throws Exception;
+    }
 
-        ClassEntry currentEntry = entry;
-        while (currentEntry != null) {
-            outerClasses.add(currentEntry);
-            currentEntry = currentEntry.getOuterClass();
+    /**
+     * @return a reporter for each rule, which formats the errors it reports into {@code errors}
+     */
+    private static MappingRule.Reporter[] createReporters(Map<String, MappingRule> rules, ErrorOutput output, List<String[]> errors) {
+        MappingRule.Reporter[] reporters = new MappingRule.Reporter[rules.size()];
+        int i = 0;
+        for (String name : rules.keySet()) {
+            reporters[i++] = (entry, contextClass, targetClass) -> errors.add(output.format(new MappingError(name, entry, contextClass, targetClass)));
         }
-
-        return outerClasses;
+        return reporters;
     }
 
     @Override
-    public void run(String[] args) throws Exception {
-        File fileJarIn = new File(args[0]);
-        File fileMappings = new File(args[1]);
-
-        System.out.println("Reading JAR...");
-	    EnigmaProject deobfuscator = Enigma.create().openJar(fileJarIn.toPath(), ProgressListener.none());
-        System.out.println("Reading mappings...");
+    public void run(String[] args, CommandContext context) throws Exception {
+        Arguments arguments = Arguments.parse(args);
+        File fileJarIn = new File(arguments.get(0));
+        File fileMappings = new File(arguments.get(1));
+        int threads = Math.max(1, arguments.intOption("threads", Runtime.getRuntime().availableProcessors()));
+        Map<String, MappingRule> rules = createRules(arguments.option("rules", null));
+        List<MappingRule> ruleList = new ArrayList<>(rules.values());
+        String format = arguments.option("format", "text");
+        int spillThreshold = arguments.intOption("spill-threshold", DEFAULT_SPILL_THRESHOLD);
 
-        MappingFormat format = fileMappings.isDirectory() ? MappingFormat.ENIGMA_DIRECTORY : MappingFormat.ENIGMA_FILE;
-        EntryTree<EntryMapping> mappings = format.read(fileMappings.toPath(), ProgressListener.none());
-        deobfuscator.setMappings(mappings);
+        context.out().println("Reading JAR...");
+        JarIndex idx = EnigmaUtils.getJarIndex(context, fileJarIn.toPath());
+        HierarchyIndex<ClassEntry> hierarchy = EnigmaUtils.getHierarchyIndex(context, fileJarIn.toPath());
+        context.out().println("Reading mappings...");
+        EntryTree<EntryMapping> mappings = EnigmaUtils.getMappings(context, fileMappings.toPath());
 
-        JarIndex idx = deobfuscator.getJarIndex();
         EntryIndex entryIndex = idx.getEntryIndex();
         ReferenceIndex referenceIndex = idx.getReferenceIndex();
+        RuleContext ruleContext = new RuleContext(idx, hierarchy, mappings);
+        ErrorOutput output = ErrorOutput.create(format, context.out(), rules, ruleContext, spillThreshold);
 
-        EntryRemapper mapper = deobfuscator.getMapper();
+        List<Callable<List<String[]>>> tasks = new ArrayList<>();
+        List<ClassEntry> classes = new ArrayList<>(entryIndex.getClasses());
+        List<FieldEntry> fields = new ArrayList<>(entryIndex.getFields());
+        List<MethodEntry> methods = new ArrayList<>(entryIndex.getMethods());
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (classes.size() + fields.size() + methods.size()) / (threads * 8));
 
-        SortedMap<String, Set<String>> errorStrings = new TreeMap<>();
+        for (List<ClassEntry> chunk : Lists.partition(classes, chunkSize)) {
+            tasks.add(() -> {
+                List<String[]> errors = new ArrayList<>();
+                MappingRule.Reporter[] reporters = createReporters(rules, output, errors);
+                for (ClassEntry entry : chunk) {
+                    for (int i = 0; i < reporters.length; i++) {
+                        ruleList.get(i).visitClass(entry, ruleContext, reporters[i]);
+                    }
+                }
+                return errors;
+            });
+        }
 
-        for (FieldEntry entry : entryIndex.getFields()) {
-            AccessFlags entryAcc = entryIndex.getFieldAccess(entry);
-            if (!entryAcc.isPublic() && !entryAcc.isPrivate()) {
-                for (EntryReference<FieldEntry, MethodDefEntry> ref : referenceIndex.getReferencesToField(entry)) {
-                    boolean valid = isRefValid(entryAcc, ref, deobfuscator);
+        for (List<FieldEntry> chunk : Lists.partition(fields, chunkSize)) {
+            tasks.add(() -> {
+                List<String[]> errors = new ArrayList<>();
+                MappingRule.Reporter[] reporters = createReporters(rules, output, errors);
+                for (FieldEntry entry : chunk) {
+                    AccessFlags entryAcc = entryIndex.getFieldAccess(entry);
+                    for (int i = 0; i < reporters.length; i++) {
+                        ruleList.get(i).visitField(entry, entryAcc, ruleContext, reporters[i]);
+                    }
 
-                    if (!valid) {
-                        EntryReference<FieldEntry, MethodDefEntry> refDeobf = mapper.deobfuscate(ref);
-                        addError(errorStrings, "ERROR: Must be in one package: " + refDeobf.context.getContainingClass() + " and " + refDeobf.entry.getContainingClass(), "field " + refDeobf.entry.getName());
+                    for (EntryReference<FieldEntry, MethodDefEntry> ref : referenceIndex.getReferencesToField(entry)) {
+                        for (int i = 0; i < reporters.length; i++) {
+                            ruleList.get(i).visitReference(ref, entryAcc, ruleContext, reporters[i]);
+                        }
                     }
                 }
-            }
+                return errors;
+            });
         }
 
-        for (MethodEntry entry : entryIndex.getMethods()) {
-            AccessFlags entryAcc = entryIndex.getMethodAccess(entry);
-            if (!entryAcc.isPublic() && !entryAcc.isPrivate()) {
-                for (EntryReference<MethodEntry, MethodDefEntry> ref : referenceIndex.getReferencesToMethod(entry)) {
-                    boolean valid = isRefValid(entryAcc, ref, deobfuscator);
+        for (List<MethodEntry> chunk : Lists.partition(methods, chunkSize)) {
+            tasks.add(() -> {
+                List<String[]> errors = new ArrayList<>();
+                MappingRule.Reporter[] reporters = createReporters(rules, output, errors);
+                for (MethodEntry entry : chunk) {
+                    AccessFlags entryAcc = entryIndex.getMethodAccess(entry);
+                    for (int i = 0; i < reporters.length; i++) {
+                        ruleList.get(i).visitMethod(entry, entryAcc, ruleContext, reporters[i]);
+                    }
 
-                    if (!valid) {
-                        EntryReference<MethodEntry, MethodDefEntry> refDeobf = mapper.deobfuscate(ref);
-                        addError(errorStrings, "ERROR: Must be in one package: " + refDeobf.context.getContainingClass() + " and " + refDeobf.entry.getContainingClass(), "method " + refDeobf.entry.getName());
+                    for (EntryReference<MethodEntry, MethodDefEntry> ref : referenceIndex.getReferencesToMethod(entry)) {
+                        for (int i = 0; i < reporters.length; i++) {
+                            ruleList.get(i).visitReference(ref, entryAcc, ruleContext, reporters[i]);
+                        }
                     }
                 }
-            }
+                return errors;
+            });
         }
 
-        for (String s : errorStrings.keySet()) {
-            System.out.println(s + " (" + String.join(", ", errorStrings.get(s)) + ")");
+        // chunks are written in submission order, so errors come out in the same order
+        // (and group identically) as in a sequential run
+        try (Metrics.Phase phase = context.metrics().start("validation")) {
+            runTasks(tasks, threads, errors -> {
+                for (String[] error : errors) {
+                    output.write(error);
+                }
+            });
+
+            List<String[]> errors = new ArrayList<>();
+            MappingRule.Reporter[] reporters = createReporters(rules, output, errors);
+            for (int i = 0; i < reporters.length; i++) {
+                ruleList.get(i).finish(ruleContext, reporters[i]);
+            }
+            for (String[] error : errors) {
+                output.write(error);
+            }
+
+            output.finish();
+            phase.setItems(classes.size() + fields.size() + methods.size());
+        } finally {
+            output.close();
         }
     }
 }
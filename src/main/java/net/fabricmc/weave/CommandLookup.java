@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import net.fabricmc.weave.util.Arguments;
+import net.fabricmc.weave.util.TinyMappings;
+import net.fabricmc.weave.util.Utils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Looks names up in a Tiny file. Queries are class names, {@code owner.name} for any
+ * member, {@code owner.name:desc} for a field or {@code owner.name(desc)} for a method,
+ * in the namespace given by {@code --from}, or else in the first namespace with a match.
+ */
+public class CommandLookup extends Command {
+    public CommandLookup() {
+        super("lookup");
+    }
+
+    @Override
+    public void run(String[] args, CommandContext context) throws Exception {
+        Arguments arguments = Arguments.parse(args);
+        File file = new File(arguments.get(0));
+        if (!file.exists()) {
+            throw new FileNotFoundException("Tiny file " + file.getName() + " could not be found!");
+        }
+
+        TinyMappings mappings = CommandRemapJar.readTiny(context, file.toPath());
+        List<Integer> from = getNamespaces(mappings, arguments.option("from", null));
+        List<Integer> to = getNamespaces(mappings, arguments.option("to", null));
+
+        for (int i = 1; i < arguments.size(); i++) {
+            String query = arguments.get(i);
+            boolean found = false;
+
+            for (int namespace : from) {
+                List<String> lines = lookup(mappings, query, namespace, to);
+                if (!lines.isEmpty()) {
+                    lines.forEach(context.out()::println);
+                    found = true;
+                    break;
+                }
+            }
+
+            if (!found) {
+                context.out().println("No mapping found for " + query);
+            }
+        }
+    }
+
+    private static List<Integer> getNamespaces(TinyMappings mappings, String name) {
+        List<Integer> namespaces = new ArrayList<>();
+
+        if (name == null) {
+            for (int i = 0; i < mappings.getNamespaces().size(); i++) {
+                namespaces.add(i);
+            }
+        } else if (mappings.getNamespace(name) >= 0) {
+            namespaces.add(mappings.getNamespace(name));
+        } else {
+            throw new IllegalArgumentException("Unknown namespace " + name + ", expected one of " + mappings.getNamespaces());
+        }
+
+        return namespaces;
+    }
+
+    private static List<String> lookup(TinyMappings mappings, String query, int from, List<Integer> to) {
+        List<String> lines = new ArrayList<>();
+        int dot = query.indexOf('.');
+
+        if (dot < 0) {
+            if (mappings.mapClass(query, from, from) != null) {
+                List<String> names = new ArrayList<>();
+                for (int namespace : to) {
+                    names.add(mappings.mapClass(query, from, namespace));
+                }
+                lines.add("CLASS\t" + Utils.TAB_JOINER.join(names));
+            }
+
+            return lines;
+        }
+
+        String owner = query.substring(0, dot);
+        String member = query.substring(dot + 1);
+        int paren = member.indexOf('(');
+        int colon = member.indexOf(':');
+
+        if (paren < 0) {
+            String name = colon >= 0 ? member.substring(0, colon) : member;
+            String desc = colon >= 0 ? member.substring(colon + 1) : null;
+            for (TinyMappings.Member field : mappings.findFields(owner, name, desc, from)) {
+                lines.add(format("FIELD", field, ":", to));
+            }
+        }
+
+        if (colon < 0) {
+            String name = paren >= 0 ? member.substring(0, paren) : member;
+            String desc = paren >= 0 ? member.substring(paren) : null;
+            for (TinyMappings.Member method : mappings.findMethods(owner, name, desc, from)) {
+                lines.add(format("METHOD", method, "", to));
+            }
+        }
+
+        return lines;
+    }
+
+    private static String format(String type, TinyMappings.Member member, String descSeparator, List<Integer> namespaces) {
+        StringBuilder line = new StringBuilder(type);
+        for (int namespace : namespaces) {
+            line.append('\t').append(member.getOwner(namespace))
+                    .append('.').append(member.getName(namespace))
+                    .append(descSeparator).append(member.getDesc(namespace));
+        }
+        return line.toString();
+    }
+}
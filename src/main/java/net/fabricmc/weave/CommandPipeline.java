@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import net.fabricmc.weave.util.Arguments;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several commands in one process, sharing one {@link CommandContext} so that
+ * every JAR and mapping set is only loaded once.
+ *
+ * Steps come either from a script with one command per line, or inline, separated by
+ * {@code ;} arguments. A step prefixed with {@code &} runs concurrently with the step
+ * before it; a step without it waits for every running step to finish. Output of
+ * concurrent steps is printed in step order once they are all done.
+ */
+public class CommandPipeline extends Command {
+    public CommandPipeline() {
+        super("pipeline");
+    }
+
+    @Override
+    public void run(String[] args, CommandContext context) throws Exception {
+        List<List<String[]>> groups = args.length == 1 ? parseScript(args[0]) : parseInline(args);
+
+        for (List<String[]> group : groups) {
+            for (String[] step : group) {
+                validate(step);
+            }
+        }
+
+        for (List<String[]> group : groups) {
+            if (group.size() == 1) {
+                runStep(group.get(0), context);
+            } else {
+                runConcurrently(group, context);
+            }
+        }
+    }
+
+    private static List<List<String[]>> parseScript(String script) throws Exception {
+        List<List<String[]>> groups = new ArrayList<>();
+
+        for (String line : Files.readAllLines(Paths.get(script), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            boolean concurrent = line.startsWith("&");
+            if (concurrent) {
+                line = line.substring(1).trim();
+            }
+
+            String[] step = line.indexOf('\t') >= 0 ? line.split("\t") : line.split(" +");
+            addStep(groups, step, concurrent);
+        }
+
+        return groups;
+    }
+
+    private static List<List<String[]>> parseInline(String[] args) {
+        List<List<String[]>> groups = new ArrayList<>();
+        List<String> step = new ArrayList<>();
+        boolean concurrent = false;
+
+        for (String arg : args) {
+            if (arg.equals(";") || arg.equals("&")) {
+                if (!step.isEmpty()) {
+                    addStep(groups, step.toArray(new String[0]), concurrent);
+                    step.clear();
+                }
+                concurrent = arg.equals("&");
+            } else {
+                step.add(arg);
+            }
+        }
+
+        if (!step.isEmpty()) {
+            addStep(groups, step.toArray(new String[0]), concurrent);
+        }
+
+        return groups;
+    }
+
+    private static void addStep(List<List<String[]>> groups, String[] step, boolean concurrent) {
+        if (!concurrent || groups.isEmpty()) {
+            groups.add(new ArrayList<>());
+        }
+
+        groups.get(groups.size() - 1).add(step);
+    }
+
+    private static void validate(String[] step) {
+        CommandDescriptor command = Main.getCommand(step[0]);
+
+        if (command == null || command.getClassName().equals(CommandPipeline.class.getName())
+                || command.getClassName().equals(CommandDaemon.class.getName())) {
+            throw new IllegalArgumentException("Unknown pipeline command " + step[0]);
+        } else if (!command.isArgumentCountValid(Arguments.parse(step).size() - 1)) {
+            throw new IllegalArgumentException("Usage: " + command.getName() + " " + command.getHelpString());
+        }
+    }
+
+    private static void runStep(String[] step, CommandContext context) throws Exception {
+        Main.getCommand(step[0]).getCommand().run(Arrays.copyOfRange(step, 1, step.length), context);
+    }
+
+    private static void runConcurrently(List<String[]> group, CommandContext context) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(group.size());
+        List<ByteArrayOutputStream> outputs = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (String[] step : group) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                CommandContext stepContext = context.withOutput(new PrintStream(output, true, "UTF-8"));
+
+                outputs.add(output);
+                futures.add(executor.submit(() -> {
+                    runStep(step, stepContext);
+                    return null;
+                }));
+            }
+
+            Exception failure = null;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+
+                context.out().print(outputs.get(i).toString("UTF-8"));
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.fabricmc.weave;
+
+import net.fabricmc.weave.util.Arguments;
+import net.fabricmc.weave.util.EnigmaUtils;
+import net.fabricmc.weave.util.JarRemapper;
+import net.fabricmc.weave.util.JarScan;
+import net.fabricmc.weave.util.NameMapper;
+import net.fabricmc.weave.util.TinyMappings;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+public class CommandRemapJar extends Command {
+    public CommandRemapJar() {
+        super("remapJar");
+    }
+
+    @Override
+    public void run(String[] args, CommandContext context) throws Exception {
+        Arguments arguments = Arguments.parse(args);
+        File injf = new File(arguments.get(0));
+        File inf = new File(arguments.get(1));
+        File outf = new File(arguments.get(2));
+
+        if (!injf.exists() || !injf.isFile()) {
+            throw new FileNotFoundException("Input JAR could not be found!");
+        }
+
+        if (!inf.exists()) {
+            throw new FileNotFoundException("Mappings could not be found!");
+        }
+
+        NameMapper mapper;
+        if (isTiny(inf.toPath())) {
+            TinyMappings mappings = readTiny(context, inf.toPath());
+            int from = getNamespace(mappings, arguments.option("from", null), 0);
+            int to = getNamespace(mappings, arguments.option("to", null), 1);
+            mapper = mappings.toNameMapper(from, to);
+        } else if (Main.isEnigmaPresent()) {
+            if (arguments.has("from") || arguments.has("to")) {
+                throw new IllegalArgumentException("Enigma mappings have no namespaces!");
+            }
+            mapper = new EnigmaNameMapper(EnigmaUtils.getMappings(context, inf.toPath()));
+        } else {
+            throw new IllegalArgumentException("Reading Enigma mappings requires Enigma on the classpath!");
+        }
+
+        context.out().println("Reading JAR...");
+        Path jar = injf.toPath();
+        JarScan scan;
+        try (Metrics.Phase phase = context.metrics().start("jarScan")) {
+            scan = context.get("declarationScan", Collections.singletonList(jar), () -> JarScan.scan(jar, true));
+            phase.setItems(scan.getClasses().size());
+        }
+
+        context.out().println("Remapping...");
+        try (Metrics.Phase phase = context.metrics().start("writing")) {
+            int count = new JarRemapper(mapper, scan).remap(jar, outf.toPath());
+            phase.setItems(count);
+            context.out().println("Remapped " + count + " classes");
+        }
+    }
+
+    static TinyMappings readTiny(CommandContext context, Path path) throws Exception {
+        try (Metrics.Phase phase = context.metrics().start("mappingRead")) {
+            TinyMappings mappings = context.get("tiny", Collections.singletonList(path), () -> TinyMappings.read(path));
+            phase.setItems(mappings.getClassCount() + mappings.getFieldCount() + mappings.getMethodCount());
+            return mappings;
+        }
+    }
+
+    static boolean isTiny(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+
+        byte[] header = new byte[5];
+        try (InputStream in = Files.newInputStream(path)) {
+            new DataInputStream(in).readFully(header);
+        } catch (IOException e) {
+            return false;
+        }
+
+        String start = new String(header, StandardCharsets.UTF_8);
+        return start.startsWith("v1\t") || start.equals("tiny\t");
+    }
+
+    static int getNamespace(TinyMappings mappings, String name, int defaultNamespace) {
+        if (name == null) {
+            if (defaultNamespace >= mappings.getNamespaces().size()) {
+                throw new IllegalArgumentException("Tiny file has no namespace " + defaultNamespace);
+            }
+            return defaultNamespace;
+        }
+
+        int namespace = mappings.getNamespace(name);
+        if (namespace < 0) {
+            throw new IllegalArgumentException("Unknown namespace " + name + ", expected one of " + mappings.getNamespaces());
+        }
+        return namespace;
+    }
+}
@@ -16,38 +16,33 @@
 
 package net.fabricmc.weave;
 
-import com.google.common.collect.Lists;
-import cuchaz.enigma.ProgressListener;
-import cuchaz.enigma.analysis.ClassCache;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import cuchaz.enigma.analysis.index.JarIndex;
-import cuchaz.enigma.translation.MappingTranslator;
-import cuchaz.enigma.translation.Translator;
 import cuchaz.enigma.translation.mapping.EntryMapping;
-import cuchaz.enigma.translation.mapping.MappingDelta;
 import cuchaz.enigma.translation.mapping.MappingsChecker;
-import cuchaz.enigma.translation.mapping.VoidEntryResolver;
-import cuchaz.enigma.translation.mapping.serde.MappingFormat;
-import cuchaz.enigma.translation.mapping.serde.MappingsWriter;
 import cuchaz.enigma.translation.mapping.tree.EntryTree;
-import cuchaz.enigma.translation.mapping.tree.EntryTreeNode;
-import cuchaz.enigma.translation.representation.entry.ClassEntry;
-import cuchaz.enigma.translation.representation.entry.Entry;
-import cuchaz.enigma.translation.representation.entry.FieldEntry;
-import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import net.fabricmc.weave.util.Arguments;
+import net.fabricmc.weave.util.AtomicFileOutput;
 import net.fabricmc.weave.util.EnigmaUtils;
+import net.fabricmc.weave.util.ParallelMappingReader;
 import net.fabricmc.weave.util.Utils;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class CommandTinyify extends Command {
     public CommandTinyify() {
@@ -55,22 +50,39 @@ public class CommandTinyify extends Command {
     }
 
     @Override
-    public String getHelpString() {
-        return "<input-jar> <enigma-mappings> <output-tiny> [name-obf] [name-deobf]";
-    }
+    public void run(String[] args, CommandContext context) throws Exception {
+        Arguments arguments = Arguments.parse(args);
+        File injf = new File(arguments.get(0));
+        File inf = new File(arguments.get(1));
+        File outf = new File(arguments.get(2));
+        String nameObf = arguments.get(3, "official");
+        String nameDeobf = arguments.get(4, "named");
+        boolean v2 = arguments.has("v2");
+        boolean binary = arguments.has("binary");
+        boolean declarationsOnly = arguments.has("declarations-only");
+        String incrementalState = arguments.option("incremental", null);
+        int threads = Math.max(1, arguments.intOption("threads", Runtime.getRuntime().availableProcessors()));
 
-    @Override
-    public boolean isArgumentCountValid(int count) {
-        return count >= 3 && count <= 5;
-    }
+        Map<String, File> extraNamespaces = new LinkedHashMap<>();
+        for (String namespace : arguments.options("namespace")) {
+            int split = namespace.indexOf('=');
+            if (split <= 0) {
+                throw new IllegalArgumentException("Expected --namespace=<name>=<enigma-mappings>, got '" + namespace + "'");
+            }
+            extraNamespaces.put(namespace.substring(0, split), new File(namespace.substring(split + 1)));
+        }
 
-    @Override
-    public void run(String[] args) throws Exception {
-        File injf = new File(args[0]);
-        File inf = new File(args[1]);
-        File outf = new File(args[2]);
-        String nameObf = args.length > 3 ? args[3] : "official";
-        String nameDeobf = args.length > 4 ? args[4] : "named";
+        if (v2 && binary) {
+            throw new IllegalArgumentException("Only one of --v2 and --binary can be given!");
+        }
+
+        if (!extraNamespaces.isEmpty() && !v2) {
+            throw new IllegalArgumentException("Extra namespaces can only be written as Tiny v2!");
+        }
+
+        if (incrementalState != null && (v2 || binary)) {
+            throw new IllegalArgumentException("Incremental output is only supported for Tiny v1!");
+        }
 
         if (!injf.exists() || !injf.isFile()) {
             throw new FileNotFoundException("Input JAR could not be found!");
@@ -80,110 +92,225 @@ public class CommandTinyify extends Command {
             throw new FileNotFoundException("Enigma mappings could not be found!");
         }
 
-        System.out.println("Reading JAR file...");
+        for (File extraFile : extraNamespaces.values()) {
+            if (!extraFile.exists()) {
+                throw new FileNotFoundException("Enigma mappings " + extraFile + " could not be found!");
+            }
+        }
 
-        JarIndex index = JarIndex.empty();
-        index.indexJar(ClassCache.of(injf.toPath()), ProgressListener.none());
+        String format = binary ? "binary" : v2 ? "v2" : "v1";
+        Path inputsFile = Paths.get(outf.getPath() + ".inputs");
+        String codeHash;
+        String jarHash;
+        Map<String, String> mappingHashes;
+        String inputDigest;
+        boolean upToDate;
 
-        System.out.println("Reading Enigma mappings...");
-        MappingFormat format = inf.isDirectory() ? MappingFormat.ENIGMA_DIRECTORY : MappingFormat.ENIGMA_FILE;
-        EntryTree<EntryMapping> mappings = format.read(inf.toPath(), ProgressListener.none());
+        try (Metrics.Phase phase = context.metrics().start("hashInputs")) {
+            codeHash = getCodeHash(context);
+            jarHash = EnigmaUtils.getHash(context, injf.toPath());
+            mappingHashes = hashMappingFiles(inf.toPath());
+            inputDigest = codeHash != null ? getInputDigest(codeHash, jarHash, mappingHashes, extraNamespaces, format, nameObf, nameDeobf, declarationsOnly) : null;
+            upToDate = inputDigest != null && isUpToDate(outf.toPath(), inputsFile, inputDigest);
+            phase.setItems(mappingHashes.size() + extraNamespaces.size() + 1);
+        }
 
-        MappingsChecker checker = new MappingsChecker(index, mappings);
-        checker.dropBrokenMappings(ProgressListener.none());
+        if (upToDate) {
+            context.out().println("Output is up to date with its inputs, nothing to do");
+            return;
+        }
 
-        System.out.println("Writing Tiny mappings...");
+        // the incremental state depends on everything the digest does but the mappings, which it tracks per file
+        String incrementalKey = codeHash != null ? Utils.TAB_JOINER.join(codeHash, jarHash, nameObf, nameDeobf, declarationsOnly) : null;
 
-        MappingsWriter writer = new TinyMappingsWriter(nameObf, nameDeobf);
-        writer.write(mappings, MappingDelta.added(mappings), outf.toPath(), ProgressListener.none());
+        // a failed write must not leave a record that matches the new inputs
+        Files.deleteIfExists(inputsFile);
+        String outputHash = write(context, injf, inf, outf, extraNamespaces, nameObf, nameDeobf, v2, binary, declarationsOnly,
+                incrementalState, incrementalKey, mappingHashes, threads);
+        if (inputDigest != null) {
+            writeInputs(inputsFile, inputDigest, outputHash);
+        }
     }
 
-    private static class TinyMappingsWriter implements MappingsWriter {
-        private static final String VERSION_CONSTANT = "v1";
+    /**
+     * @param incrementalKey identifies the inputs besides the mappings, or null if the code can't be identified
+     * @param mappingHashes the hashes of the mapping files, from {@link #hashMappingFiles}
+     * @return the SHA-256 of the written output
+     */
+    private String write(CommandContext context, File injf, File inf, File outf, Map<String, File> extraNamespaces, String nameObf, String nameDeobf,
+                         boolean v2, boolean binary, boolean declarationsOnly, String incrementalState, String incrementalKey,
+                         Map<String, String> mappingHashes, int threads) throws Exception {
+        if (incrementalState != null) {
+            if (!inf.isDirectory()) {
+                context.out().println("Incremental output needs an Enigma mapping directory, writing everything");
+            } else if (incrementalKey == null) {
+                // without knowing the code, chunks serialized by another version could be reused
+                context.out().println("Incremental output needs Weave and Enigma to be run from JARs, writing everything");
+            } else {
+                TinyMappingsWriter writer = new TinyMappingsWriter(nameObf, nameDeobf);
+                IncrementalTinyWriter incrementalWriter = new IncrementalTinyWriter(writer, new File(incrementalState).toPath(), incrementalKey);
 
-        // HACK: as of enigma 0.13.1, some fields seem to appear duplicated?
-        private final Set<String> writtenLines = new HashSet<>();
-        private final String nameObf;
-        private final String nameDeobf;
+                context.out().println("Writing Tiny mappings incrementally...");
+                String outputHash;
+                Metrics.Phase phase = context.metrics().start("writing");
+                try {
+                    outputHash = incrementalWriter.write(inf.toPath(), mappingHashes, outf.toPath(), () -> loadIndex(context, injf, declarationsOnly), context.out());
+                } finally {
+                    phase.close();
+                }
 
-        private TinyMappingsWriter(String nameObf, String nameDeobf) {
-            this.nameObf = nameObf;
-            this.nameDeobf = nameDeobf;
-        }
+                if (outputHash != null) {
+                    return outputHash;
+                }
 
-        @Override
-        public void write(EntryTree<EntryMapping> mappings, MappingDelta<EntryMapping> delta, Path path, ProgressListener progress) {
-            try {
-                Files.deleteIfExists(path);
-                Files.createFile(path);
-            } catch (IOException e) {
-                e.printStackTrace();
+                context.out().println("Some classes are spread over several mapping files, writing everything");
             }
+        }
 
-            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-                writeLine(writer, new String[] { VERSION_CONSTANT, nameObf, nameDeobf });
+        JarIndex index = loadIndex(context, injf, declarationsOnly);
 
-                Lists.newArrayList(mappings).stream()
-                        .map(EntryTreeNode::getEntry).sorted(Comparator.comparing(Object::toString))
-                        .forEach(entry -> writeEntry(writer, mappings, entry));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        context.out().println("Reading Enigma mappings...");
+        EntryTree<EntryMapping> mappings = readMappings(context, inf, injf, index, declarationsOnly);
+
+        List<EntryTree<EntryMapping>> extraMappings = new ArrayList<>();
+        for (File extraFile : extraNamespaces.values()) {
+            extraMappings.add(readMappings(context, extraFile, injf, index, declarationsOnly));
         }
 
-        private void writeEntry(Writer writer, EntryTree<EntryMapping> mappings, Entry<?> entry) {
-            EntryTreeNode<EntryMapping> node = mappings.findNode(entry);
-            if (node == null) {
-                return;
-            }
+        context.out().println(binary ? "Writing binary mappings..." : "Writing Tiny mappings...");
 
-            Translator translator = new MappingTranslator(mappings, VoidEntryResolver.INSTANCE);
+        FileMappingsWriter writer;
+        if (binary) {
+            writer = new BinaryMappingsWriter(nameObf, nameDeobf);
+        } else if (v2) {
+            List<String> namespaces = new ArrayList<>();
+            namespaces.add(nameObf);
+            namespaces.add(nameDeobf);
+            namespaces.addAll(extraNamespaces.keySet());
+            writer = new TinyV2MappingsWriter(namespaces, extraMappings);
+        } else {
+            writer = new TinyMappingsWriter(nameObf, nameDeobf, threads);
+        }
 
-            EntryMapping mapping = mappings.get(entry);
-            if (mapping != null && !entry.getName().equals(mapping.getTargetName())) {
-                if (entry instanceof ClassEntry) {
-                    writeClass(writer, (ClassEntry) entry, translator);
-                } else if (entry instanceof FieldEntry) {
-                    writeLine(writer, EnigmaUtils.serializeEntry(entry, true, mapping.getTargetName()));
-                } else if (entry instanceof MethodEntry) {
-                    writeLine(writer, EnigmaUtils.serializeEntry(entry, true, mapping.getTargetName()));
-                }
+        try (Metrics.Phase phase = context.metrics().start("writing")) {
+            return writer.writeFile(mappings, outf.toPath(), new MetricsProgressListener(phase));
+        }
+    }
+
+    /**
+     * Hashes everything the output depends on: the JAR, the mappings, how they are written
+     * and the Weave and Enigma code doing it. The thread count doesn't change the output.
+     */
+    private static String getInputDigest(String codeHash, String jarHash, Map<String, String> mappingHashes, Map<String, File> extraNamespaces, String format,
+                                         String nameObf, String nameDeobf, boolean declarationsOnly) throws IOException {
+        List<String> inputs = new ArrayList<>();
+        inputs.add(codeHash);
+        inputs.add(jarHash);
+        inputs.add(combineHashes(mappingHashes));
+        inputs.add(format);
+        inputs.add(nameObf);
+        inputs.add(nameDeobf);
+        inputs.add(String.valueOf(declarationsOnly));
+
+        for (Map.Entry<String, File> namespace : extraNamespaces.entrySet()) {
+            inputs.add(namespace.getKey());
+            inputs.add(combineHashes(hashMappingFiles(namespace.getValue().toPath())));
+        }
+
+        return Hashing.sha256().hashString(Utils.TAB_JOINER.join(inputs), StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Snapshot builds share a version, so the Weave and Enigma JARs themselves are hashed.
+     *
+     * @return the hash of the code, or null if it isn't run from JARs and can't be identified
+     */
+    private static String getCodeHash(CommandContext context) throws Exception {
+        List<String> hashes = new ArrayList<>();
+        for (Class<?> code : Arrays.asList(CommandTinyify.class, MappingsChecker.class)) {
+            CodeSource source = code.getProtectionDomain().getCodeSource();
+            Path codePath = source != null ? Paths.get(source.getLocation().toURI()) : null;
+            if (codePath == null || !Files.isRegularFile(codePath)) {
+                return null;
             }
 
-            writeChildren(writer, mappings, node);
+            hashes.add(EnigmaUtils.getHash(context, codePath));
         }
 
-        private void writeChildren(Writer writer, EntryTree<EntryMapping> mappings, EntryTreeNode<EntryMapping> node) {
-            node.getChildren().stream()
-                    .filter(e -> e instanceof FieldEntry).sorted()
-                    .forEach(child -> writeEntry(writer, mappings, child));
+        return Utils.TAB_JOINER.join(hashes);
+    }
 
-            node.getChildren().stream()
-                    .filter(e -> e instanceof MethodEntry).sorted()
-                    .forEach(child -> writeEntry(writer, mappings, child));
+    /**
+     * @return the SHA-256 of every mapping file of a directory by its path relative to the directory,
+     *         with / as separator, or of the single file under an empty path
+     */
+    private static Map<String, String> hashMappingFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return Collections.singletonMap("", Utils.sha256(path));
+        }
 
-            node.getChildren().stream()
-                    .filter(e -> e instanceof ClassEntry).sorted()
-                    .forEach(child -> writeEntry(writer, mappings, child));
+        Map<String, String> hashes = new TreeMap<>();
+        for (Path file : ParallelMappingReader.listMappingFiles(path)) {
+            hashes.put(path.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"), Utils.sha256(file));
         }
+        return hashes;
+    }
 
-        private void writeClass(Writer writer, ClassEntry entry, Translator translator) {
-            ClassEntry translatedEntry = translator.translate(entry);
+    private static String combineHashes(Map<String, String> hashes) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (Map.Entry<String, String> file : hashes.entrySet()) {
+            hasher.putString(file.getKey(), StandardCharsets.UTF_8);
+            hasher.putChar('\t');
+            hasher.putString(file.getValue(), StandardCharsets.UTF_8);
+            hasher.putChar('\n');
+        }
+        return hasher.hash().toString();
+    }
 
-            String obfClassName = Utils.NONE_PREFIX_REMOVER.map(entry.getFullName());
-            String deobfClassName = Utils.NONE_PREFIX_REMOVER.map(translatedEntry.getFullName());
-            writeLine(writer, new String[] { "CLASS", obfClassName, deobfClassName });
+    /**
+     * The inputs file next to the output holds the digest of the inputs it was written from
+     * and the hash of the output, so that an output changed since is written again.
+     */
+    private static boolean isUpToDate(Path output, Path inputsFile, String inputDigest) throws IOException {
+        if (!Files.isRegularFile(output) || !Files.isRegularFile(inputsFile)) {
+            return false;
         }
 
-        private void writeLine(Writer writer, String[] data) {
-            try {
-                String line = Utils.TAB_JOINER.join(data) + "\n";
-                if (writtenLines.add(line)) {
-                    writer.write(line);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+        List<String> lines = Files.readAllLines(inputsFile, StandardCharsets.UTF_8);
+        return lines.size() == 2 && lines.get(0).equals(inputDigest) && lines.get(1).equals(Utils.sha256(output));
+    }
+
+    private static void writeInputs(Path inputsFile, String inputDigest, String outputHash) throws IOException {
+        try (AtomicFileOutput output = new AtomicFileOutput(inputsFile)) {
+            output.getStream().write((inputDigest + "\n" + outputHash + "\n").getBytes(StandardCharsets.UTF_8));
+            output.commit();
+        }
+    }
+
+    private JarIndex loadIndex(CommandContext context, File jar, boolean declarationsOnly) throws Exception {
+        context.out().println("Reading JAR file...");
+
+        if (declarationsOnly) {
+            // dropping broken mappings needs what is declared and the bridge methods, not what references what
+            return EnigmaUtils.getDeclarationIndex(context, jar.toPath());
+        } else {
+            return EnigmaUtils.getJarIndex(context, jar.toPath());
         }
     }
+
+    private EntryTree<EntryMapping> readMappings(CommandContext context, File file, File jar, JarIndex index, boolean declarationsOnly) throws Exception {
+        String kind = declarationsOnly ? "checkedMappings:declarations" : "checkedMappings";
+
+        return context.get(kind, Arrays.asList(file.toPath(), jar.toPath()), () -> {
+            // the parsed mappings are shared, dropping entries must not affect other commands
+            EntryTree<EntryMapping> mappings = EnigmaUtils.copy(EnigmaUtils.getMappings(context, file.toPath()));
+
+            try (Metrics.Phase phase = context.metrics().start("dropBrokenMappings")) {
+                MappingsChecker checker = new MappingsChecker(index, mappings);
+                checker.dropBrokenMappings(new MetricsProgressListener(phase));
+            }
+
+            return mappings;
+        });
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * No two classes may be mapped to the same name.
+ */
+class DuplicateClassRule implements MappingRule {
+    private final Map<String, Set<ClassEntry>> classes = new TreeMap<>();
+
+    @Override
+    public void visitClass(ClassEntry entry, RuleContext context, Reporter reporter) {
+        String name = context.getCache().deobfuscate(entry).getFullName();
+        synchronized (classes) {
+            classes.computeIfAbsent(name, k -> new TreeSet<>(Comparator.comparing(ClassEntry::getFullName))).add(entry);
+        }
+    }
+
+    @Override
+    public void finish(RuleContext context, Reporter reporter) {
+        for (Set<ClassEntry> entries : classes.values()) {
+            if (entries.size() > 1) {
+                for (ClassEntry entry : entries) {
+                    reporter.report(entry, entry, null);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getMessage(MappingError error, RuleContext context) {
+        return "ERROR: Several classes mapped to " + context.getCache().deobfuscate(error.getContextClass()).getFullName();
+    }
+
+    @Override
+    public String getCause(MappingError error, RuleContext context) {
+        return "class " + error.getEntry().getFullName();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.translation.MappingTranslator;
+import cuchaz.enigma.translation.Translator;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.MappingDelta;
+import cuchaz.enigma.translation.mapping.VoidEntryResolver;
+import cuchaz.enigma.translation.mapping.serde.MappingFormat;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.EntryTreeNode;
+import cuchaz.enigma.translation.mapping.tree.HashEntryTree;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import net.fabricmc.weave.util.EnigmaUtils;
+import net.fabricmc.weave.util.MappingDiff;
+import net.fabricmc.weave.util.Utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The rows of Enigma mappings, from obfuscated to deobfuscated names.
+ */
+class EnigmaDiffSource implements MappingDiff.Source {
+    private final EntryTree<EntryMapping> mappings;
+    private final TreeMap<String, EntryTreeNode<EntryMapping>> roots = new TreeMap<>();
+    private final Translator translator;
+
+    EnigmaDiffSource(EntryTree<EntryMapping> mappings) {
+        this.mappings = mappings;
+        for (EntryTreeNode<EntryMapping> root : TinyMappingsWriter.getRootNodes(mappings)) {
+            roots.put(Utils.removeNone(((ClassEntry) root.getEntry()).getFullName()), root);
+        }
+        this.translator = new MappingTranslator(mappings, VoidEntryResolver.INSTANCE);
+    }
+
+    private ClassEntry getRootEntry(String topLevelClass) {
+        EntryTreeNode<EntryMapping> root = roots.get(topLevelClass);
+        return root != null ? (ClassEntry) root.getEntry() : null;
+    }
+
+    /**
+     * Updates an Enigma mapping directory holding the mappings of {@code older} to these
+     * mappings, rewriting only the files of the given top-level classes.
+     */
+    void writeDelta(EnigmaDiffSource older, Set<String> changedClasses, Path dir) {
+        // the directory writer rewrites the file of every top-level class in the changes
+        HashEntryTree<Object> changes = new HashEntryTree<>();
+        for (String name : changedClasses) {
+            ClassEntry entry = getRootEntry(name);
+            changes.insert(entry != null ? entry : older.getRootEntry(name), MappingDelta.PLACEHOLDER);
+        }
+
+        MappingFormat.ENIGMA_DIRECTORY.write(mappings, new MappingDelta<>(older.mappings, changes), dir, ProgressListener.none());
+    }
+
+    @Override
+    public NavigableSet<String> getTopLevelClasses() {
+        return Collections.unmodifiableNavigableSet(roots.navigableKeySet());
+    }
+
+    @Override
+    public SortedMap<String, String> getRows(String topLevelClass) {
+        SortedMap<String, String> rows = new TreeMap<>();
+        EntryTreeNode<EntryMapping> root = roots.get(topLevelClass);
+        if (root != null) {
+            addRows(rows, root);
+        }
+        return rows;
+    }
+
+    private void addRows(SortedMap<String, String> rows, EntryTreeNode<EntryMapping> node) {
+        Entry<?> entry = node.getEntry();
+        EntryMapping mapping = node.getValue();
+
+        if (mapping != null) {
+            String target;
+            String name;
+            if (entry instanceof ClassEntry) {
+                target = Utils.removeNone(translator.translate((ClassEntry) entry).getFullName());
+                name = Utils.removeNone(((ClassEntry) entry).getFullName());
+            } else {
+                target = mapping.getTargetName();
+                name = entry.getName();
+            }
+
+            StringBuilder key = new StringBuilder();
+            try {
+                if (!name.equals(target) && EnigmaUtils.appendEntry(key, entry, true)) {
+                    rows.put(key.toString(), target);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        for (EntryTreeNode<EntryMapping> child : node.getChildNodes()) {
+            addRows(rows, child);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.fabricmc.weave;
+
+import cuchaz.enigma.translation.MappingTranslator;
+import cuchaz.enigma.translation.Translator;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.VoidEntryResolver;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.TypeDescriptor;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import net.fabricmc.weave.util.NameMapper;
+import net.fabricmc.weave.util.Utils;
+
+/**
+ * Enigma mappings as a {@link NameMapper}, from obfuscated to deobfuscated names.
+ * Mapped class names have their "none/" prefix removed, like the names in binary mappings.
+ */
+class EnigmaNameMapper implements NameMapper {
+    private final EntryTree<EntryMapping> mappings;
+    private final Translator translator;
+
+    EnigmaNameMapper(EntryTree<EntryMapping> mappings) {
+        this.mappings = mappings;
+        this.translator = new MappingTranslator(mappings, VoidEntryResolver.INSTANCE);
+    }
+
+    @Override
+    public String mapClass(String name) {
+        ClassEntry entry = new ClassEntry(name);
+
+        // an inner class is renamed with the classes it is nested in, even without a mapping of its own
+        for (ClassEntry mapped = entry; mapped != null; mapped = mapped.getOuterClass()) {
+            if (mappings.get(mapped) != null) {
+                return Utils.removeNone(translator.translate(entry).getFullName());
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String mapField(String owner, String name, String desc) {
+        return getTargetName(mappings.get(new FieldEntry(new ClassEntry(owner), name, new TypeDescriptor(desc))));
+    }
+
+    @Override
+    public String mapMethod(String owner, String name, String desc) {
+        return getTargetName(mappings.get(new MethodEntry(new ClassEntry(owner), name, new MethodDescriptor(desc))));
+    }
+
+    private static String getTargetName(EntryMapping mapping) {
+        return mapping != null ? mapping.getTargetName() : null;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import net.fabricmc.weave.util.EnigmaUtils;
+import net.fabricmc.weave.util.SpillingGrouper;
+import net.fabricmc.weave.util.Utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * How findMappingErrors prints errors. Errors are formatted on the worker threads that
+ * find them and written in a fixed order on one thread.
+ */
+abstract class ErrorOutput implements Closeable {
+    protected final PrintStream out;
+
+    private ErrorOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @param format text, jsonl or tsv
+     * @param spillThreshold how many text errors are held in memory before grouping spills to disk
+     */
+    static ErrorOutput create(String format, PrintStream out, Map<String, MappingRule> rules, RuleContext context, int spillThreshold) {
+        switch (format) {
+            case "text":
+                return new Text(out, rules, context, spillThreshold);
+            case "jsonl":
+                return new Jsonl(out);
+            case "tsv":
+                return new Tsv(out);
+            default:
+                throw new IllegalArgumentException("Unknown error format " + format + ", expected text, jsonl or tsv");
+        }
+    }
+
+    abstract String[] format(MappingError error);
+
+    abstract void write(String[] formatted) throws IOException;
+
+    void finish() throws IOException {
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    private static String getName(ClassEntry entry) {
+        return entry != null ? entry.getFullName() : null;
+    }
+
+    /**
+     * Errors grouped by message in message order, each followed by its causes; the
+     * causes are collected in a HashSet in the order they were found, as they were
+     * before errors were streamed, so the output is unchanged.
+     */
+    private static final class Text extends ErrorOutput {
+        private final Map<String, MappingRule> rules;
+        private final RuleContext context;
+        private final SpillingGrouper grouper;
+
+        private Text(PrintStream out, Map<String, MappingRule> rules, RuleContext context, int spillThreshold) {
+            super(out);
+            this.rules = rules;
+            this.context = context;
+            this.grouper = new SpillingGrouper(spillThreshold);
+        }
+
+        @Override
+        String[] format(MappingError error) {
+            MappingRule rule = rules.get(error.getRule());
+            return new String[] { rule.getMessage(error, context), rule.getCause(error, context) };
+        }
+
+        @Override
+        void write(String[] formatted) throws IOException {
+            grouper.add(formatted[0], formatted[1]);
+        }
+
+        @Override
+        void finish() throws IOException {
+            grouper.forEachGroup((message, causes) -> {
+                Set<String> causeSet = new HashSet<>();
+                for (String cause : causes) {
+                    causeSet.add(cause);
+                }
+                out.println(message + " (" + String.join(", ", causeSet) + ")");
+            });
+        }
+
+        @Override
+        public void close() throws IOException {
+            grouper.close();
+        }
+    }
+
+    /**
+     * One JSON object per line, with the rule, the context and target classes and the
+     * entry's type, owner, descriptor and name as in Tiny v1, all obfuscated.
+     */
+    private static final class Jsonl extends ErrorOutput {
+        private static final String[] ENTRY_FIELDS = { "type", "owner", "desc", "name" };
+
+        private Jsonl(PrintStream out) {
+            super(out);
+        }
+
+        @Override
+        String[] format(MappingError error) {
+            StringBuilder line = new StringBuilder("{\"rule\": ").append(Utils.quoteJson(error.getRule()));
+            line.append(", \"context\": ").append(quote(getName(error.getContextClass())));
+            line.append(", \"target\": ").append(quote(getName(error.getTargetClass())));
+
+            String[] entry = EnigmaUtils.serializeEntry(error.getEntry(), false);
+            if (entry.length == 2) {
+                line.append(", \"type\": ").append(Utils.quoteJson(entry[0])).append(", \"name\": ").append(Utils.quoteJson(entry[1]));
+            } else {
+                for (int i = 0; i < entry.length; i++) {
+                    line.append(", \"").append(ENTRY_FIELDS[i]).append("\": ").append(Utils.quoteJson(entry[i]));
+                }
+            }
+
+            return new String[] { line.append('}').toString() };
+        }
+
+        private static String quote(String s) {
+            return s != null ? Utils.quoteJson(s) : "null";
+        }
+
+        @Override
+        void write(String[] formatted) {
+            out.println(formatted[0]);
+        }
+    }
+
+    /**
+     * The rule, the context class, the target class (empty if there is none) and the
+     * entry's fields as in Tiny v1, all obfuscated.
+     */
+    private static final class Tsv extends ErrorOutput {
+        private Tsv(PrintStream out) {
+            super(out);
+        }
+
+        @Override
+        String[] format(MappingError error) {
+            String target = getName(error.getTargetClass());
+            String[] entry = EnigmaUtils.serializeEntry(error.getEntry(), false);
+            return new String[] { error.getRule() + '\t' + getName(error.getContextClass()) + '\t' + (target != null ? target : "") + '\t' + Utils.TAB_JOINER.join(entry) };
+        }
+
+        @Override
+        void write(String[] formatted) {
+            out.println(formatted[0]);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.translation.MappingTranslator;
+import cuchaz.enigma.translation.Translator;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.MappingsChecker;
+import cuchaz.enigma.translation.mapping.VoidEntryResolver;
+import cuchaz.enigma.translation.mapping.serde.MappingFormat;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.EntryTreeNode;
+import net.fabricmc.weave.util.AtomicFileOutput;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+/**
+ * Writes Tiny v1 from an Enigma mapping directory, reusing the output of every
+ * {@code .mapping} file that did not change since the last run.
+ *
+ * Each file holds one top-level class, and the Tiny lines of a top-level class only
+ * depend on that file and the JAR, so the lines produced for each file are kept in a
+ * state file together with the file's hash.
+ */
+class IncrementalTinyWriter {
+    private static final int MAGIC = 0x57564954; // WVIT
+    private static final int VERSION = 1;
+
+    private final TinyMappingsWriter writer;
+    private final Path stateFile;
+    private final String inputKey;
+
+    /**
+     * @param inputKey identifies everything besides the mapping files that the output depends on
+     */
+    IncrementalTinyWriter(TinyMappingsWriter writer, Path stateFile, String inputKey) {
+        this.writer = writer;
+        this.stateFile = stateFile;
+        this.inputKey = inputKey;
+    }
+
+    /**
+     * @param fileHashes the SHA-256 of every mapping file, by its path relative to {@code mappingsDir} with / as separator
+     * @return the SHA-256 of the output, or null if the mappings can't be written incrementally, in which case nothing was written
+     */
+    String write(Path mappingsDir, Map<String, String> fileHashes, Path output, Callable<JarIndex> index, PrintStream out) throws Exception {
+        Map<String, FileState> previous = readState(out);
+        Map<String, FileState> current = new TreeMap<>();
+        JarIndex jarIndex = null;
+        int changed = 0;
+
+        for (Map.Entry<String, String> file : fileHashes.entrySet()) {
+            String name = file.getKey();
+            String hash = file.getValue();
+
+            FileState state = previous.get(name);
+            if (state == null || !state.hash.equals(hash)) {
+                if (jarIndex == null) {
+                    jarIndex = index.call();
+                }
+
+                state = serialize(mappingsDir.resolve(name), hash, jarIndex);
+                changed++;
+            }
+
+            current.put(name, state);
+        }
+
+        // a class split over several files would have to be merged first
+        Map<String, String> chunks = new TreeMap<>();
+        for (FileState state : current.values()) {
+            for (Map.Entry<String, String> chunk : state.chunks.entrySet()) {
+                if (chunks.put(chunk.getKey(), chunk.getValue()) != null) {
+                    return null;
+                }
+            }
+        }
+
+        String hash;
+        try (AtomicFileOutput tinyOutput = new AtomicFileOutput(output); Writer tinyWriter = TinyMappingsWriter.newWriter(tinyOutput.getStream())) {
+            writer.writeHeader(tinyWriter);
+            for (String chunk : chunks.values()) {
+                tinyWriter.write(chunk);
+            }
+
+            tinyWriter.flush();
+            tinyOutput.commit();
+            hash = tinyOutput.getHash();
+        }
+
+        writeState(current);
+        out.println("Re-serialized " + changed + " of " + current.size() + " mapping files");
+        return hash;
+    }
+
+    private FileState serialize(Path file, String hash, JarIndex index) throws Exception {
+        EntryTree<EntryMapping> mappings = MappingFormat.ENIGMA_FILE.read(file, ProgressListener.none());
+        new MappingsChecker(index, mappings).dropBrokenMappings(ProgressListener.none());
+
+        Translator translator = new MappingTranslator(mappings, VoidEntryResolver.INSTANCE);
+        FileState state = new FileState(hash);
+
+        for (EntryTreeNode<EntryMapping> root : TinyMappingsWriter.getRootNodes(mappings)) {
+            StringWriter out = new StringWriter();
+            writer.writeClass(out, root, translator);
+            state.chunks.put(root.getEntry().toString(), out.toString());
+        }
+
+        return state;
+    }
+
+    private Map<String, FileState> readState(PrintStream out) {
+        Map<String, FileState> states = new HashMap<>();
+        if (!Files.isRegularFile(stateFile)) {
+            return states;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(inputKey)) {
+                return states;
+            }
+
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                String name = in.readUTF();
+                FileState state = new FileState(in.readUTF());
+
+                int chunkCount = in.readInt();
+                for (int j = 0; j < chunkCount; j++) {
+                    String root = in.readUTF();
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    state.chunks.put(root, new String(data, StandardCharsets.UTF_8));
+                }
+
+                states.put(name, state);
+            }
+        } catch (IOException | RuntimeException e) {
+            out.println("Incremental state " + stateFile + " is unreadable, rebuilding: " + e);
+            states.clear();
+        }
+
+        return states;
+    }
+
+    private void writeState(Map<String, FileState> states) throws IOException {
+        try (AtomicFileOutput output = new AtomicFileOutput(stateFile); DataOutputStream out = new DataOutputStream(output.getStream())) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(inputKey);
+
+            out.writeInt(states.size());
+            for (Map.Entry<String, FileState> entry : states.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().hash);
+
+                out.writeInt(entry.getValue().chunks.size());
+                for (Map.Entry<String, String> chunk : entry.getValue().chunks.entrySet()) {
+                    byte[] data = chunk.getValue().getBytes(StandardCharsets.UTF_8);
+                    out.writeUTF(chunk.getKey());
+                    out.writeInt(data.length);
+                    out.write(data);
+                }
+            }
+
+            out.flush();
+            output.commit();
+        }
+    }
+
+    private static class FileState {
+        private final String hash;
+        private final Map<String, String> chunks = new TreeMap<>();
+
+        private FileState(String hash) {
+            this.hash = hash;
+        }
+    }
+}
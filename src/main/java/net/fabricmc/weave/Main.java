@@ -16,29 +16,44 @@
 
 package net.fabricmc.weave;
 
-import net.fabricmc.weave.util.EnigmaUtils;
+import net.fabricmc.weave.util.Arguments;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
 import java.util.TreeMap;
 
 public class Main {
-    private static final Map<String, Command> COMMAND_MAP = new TreeMap<>();
+    private static final Map<String, CommandDescriptor> COMMAND_MAP = new TreeMap<>();
 
-    public static void addCommand(Command command) {
-        COMMAND_MAP.put(command.name.toLowerCase(), command);
+    /**
+     * @return the descriptor of an available command, or null
+     */
+    public static CommandDescriptor getCommand(String name) {
+        return COMMAND_MAP.get(name.toLowerCase());
     }
 
     static {
-        boolean ENIGMA_PRESENT = true;
-        try {
-            Class.forName("cuchaz.enigma.translation.representation.entry.Entry");
-        } catch (ClassNotFoundException e) {
-            ENIGMA_PRESENT = false;
+        for (CommandProvider provider : ServiceLoader.load(CommandProvider.class)) {
+            for (CommandDescriptor descriptor : provider.getCommands()) {
+                if (descriptor.isAvailable()) {
+                    COMMAND_MAP.putIfAbsent(descriptor.getName().toLowerCase(), descriptor);
+                }
+            }
         }
+    }
 
-        if (ENIGMA_PRESENT) {
-            EnigmaUtils.addEnigmaCommands();
-        }
+    /**
+     * Looks for Enigma's classes without loading any of them.
+     */
+    static boolean isEnigmaPresent() {
+        return Main.class.getClassLoader().getResource("cuchaz/enigma/translation/representation/entry/Entry.class") != null;
     }
 
     public static void error(String message) {
@@ -47,25 +62,70 @@ public class Main {
     }
 
     public static void main(String[] args) {
+        String metricsFormat = null;
+        String metricsFile = "weave-metrics.json";
+
+        // global options, taken out before the command sees its arguments
+        List<String> commandArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--metrics=")) {
+                metricsFormat = arg.substring("--metrics=".length());
+            } else if (arg.startsWith("--metrics-file=")) {
+                metricsFile = arg.substring("--metrics-file=".length());
+            } else {
+                commandArgs.add(arg);
+            }
+        }
+        args = commandArgs.toArray(new String[0]);
+
         if (args.length == 0
                 || !COMMAND_MAP.containsKey(args[0].toLowerCase())
-                || !COMMAND_MAP.get(args[0].toLowerCase()).isArgumentCountValid(args.length - 1)) {
+                || !COMMAND_MAP.get(args[0].toLowerCase()).isArgumentCountValid(Arguments.parse(args).size() - 1)) {
             System.out.println("Available commands:");
-            for (Command command : COMMAND_MAP.values()) {
-                System.out.println("\t" + command.name + " " + command.getHelpString());
+            for (CommandDescriptor descriptor : COMMAND_MAP.values()) {
+                System.out.println("\t" + descriptor.getName() + " " + descriptor.getHelpString());
             }
             System.out.println();
+            System.out.println("Global options:");
+            System.out.println("\t--metrics=json [--metrics-file=<path>]");
+            System.out.println();
             return;
         }
 
+        if (metricsFormat != null && !metricsFormat.equals("json")) {
+            error("Unsupported metrics format " + metricsFormat + ", expected json");
+        }
+
+        Command command = COMMAND_MAP.get(args[0].toLowerCase()).getCommand();
+        Metrics metrics = metricsFormat != null ? new Metrics() : Metrics.disabled();
+        boolean success = false;
+
         try {
             String[] argsCommand = new String[args.length - 1];
             if (args.length > 1) {
                 System.arraycopy(args, 1, argsCommand, 0, argsCommand.length);
             }
-            COMMAND_MAP.get(args[0].toLowerCase()).run(argsCommand);
+
+            Metrics.Phase total = metrics.start("total");
+            try {
+                command.run(argsCommand, new CommandContext(metrics));
+            } finally {
+                total.close();
+            }
+            success = true;
         } catch (Exception e) {
             e.printStackTrace();
+        }
+
+        if (metrics.isEnabled()) {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(metricsFile), StandardCharsets.UTF_8)) {
+                metrics.writeJson(writer, command.name, success);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (!success) {
             System.exit(1);
         }
     }
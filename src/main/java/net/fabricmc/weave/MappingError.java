@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+
+/**
+ * A problem found by a {@link MappingRule}: the obfuscated entry at fault, the class it
+ * was found from and the class it conflicts with or is used in. Messages are only built
+ * by the rule when the error is printed as text.
+ */
+public final class MappingError {
+    private final String rule;
+    private final Entry<?> entry;
+    private final ClassEntry contextClass;
+    private final ClassEntry targetClass;
+
+    MappingError(String rule, Entry<?> entry, ClassEntry contextClass, ClassEntry targetClass) {
+        this.rule = rule;
+        this.entry = entry;
+        this.contextClass = contextClass;
+        this.targetClass = targetClass;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+
+    public Entry<?> getEntry() {
+        return entry;
+    }
+
+    public ClassEntry getContextClass() {
+        return contextClass;
+    }
+
+    /**
+     * @return the other class involved, or null if there is none
+     */
+    public ClassEntry getTargetClass() {
+        return targetClass;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+
+/**
+ * A check run by findMappingErrors. The JAR index is traversed once, and every rule is
+ * shown each class, field, method and reference to a field or method.
+ *
+ * The visit methods are called from several threads at once, and a new instance is
+ * created for every run. Rules that need to see everything before reporting collect
+ * what they need and report it in {@link #finish}, which is called once at the end.
+ */
+public interface MappingRule {
+    default void visitClass(ClassEntry entry, RuleContext context, Reporter reporter) {
+    }
+
+    default void visitField(FieldEntry entry, AccessFlags access, RuleContext context, Reporter reporter) {
+    }
+
+    default void visitMethod(MethodEntry entry, AccessFlags access, RuleContext context, Reporter reporter) {
+    }
+
+    /**
+     * @param access the access of the referenced field or method
+     */
+    default void visitReference(EntryReference<?, MethodDefEntry> ref, AccessFlags access, RuleContext context, Reporter reporter) {
+    }
+
+    default void finish(RuleContext context, Reporter reporter) {
+    }
+
+    /**
+     * @return the message of an error reported by this rule; errors with the same message are printed together
+     */
+    String getMessage(MappingError error, RuleContext context);
+
+    /**
+     * @return what caused an error reported by this rule, listed after its message
+     */
+    String getCause(MappingError error, RuleContext context);
+
+    interface Reporter {
+        /**
+         * @param targetClass the other class involved, or null
+         */
+        void report(Entry<?> entry, ClassEntry contextClass, ClassEntry targetClass);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import net.fabricmc.weave.util.Utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wall time, CPU time, allocated bytes and item counts of the phases of a run.
+ *
+ * CPU time and allocations are measured for the whole process, so that work done by
+ * worker threads is included; phases that overlap, such as concurrent pipeline steps,
+ * include each other's work. Allocations of threads that end during a phase are missed.
+ * Both are reported as -1 if the JVM can't measure them.
+ */
+public final class Metrics {
+    private static final Metrics DISABLED = new Metrics(false);
+
+    private final boolean enabled;
+    private final List<Phase> phases = new ArrayList<>();
+
+    public Metrics() {
+        this(true);
+    }
+
+    private Metrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return metrics that record nothing
+     */
+    public static Metrics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a phase, which ends when it is closed.
+     */
+    public Phase start(String name) {
+        Phase phase = new Phase(name);
+        if (enabled) {
+            synchronized (phases) {
+                phases.add(phase);
+            }
+            phase.begin();
+        }
+        return phase;
+    }
+
+    /**
+     * Writes every ended phase, in the order they started in.
+     */
+    public void writeJson(Writer writer, String command, boolean success) throws IOException {
+        writer.write("{\n  \"command\": " + Utils.quoteJson(command) + ",\n  \"success\": " + success + ",\n  \"phases\": [");
+
+        String separator = "\n";
+        synchronized (phases) {
+            for (Phase phase : phases) {
+                if (phase.wallNanos < 0) {
+                    continue;
+                }
+
+                double seconds = phase.wallNanos / 1e9;
+                writer.write(separator + "    {\"name\": " + Utils.quoteJson(phase.name)
+                        + ", \"wallNanos\": " + phase.wallNanos
+                        + ", \"cpuNanos\": " + phase.cpuNanos
+                        + ", \"allocatedBytes\": " + phase.allocatedBytes
+                        + ", \"items\": " + phase.items
+                        + ", \"itemsPerSecond\": " + (seconds > 0 ? Math.round(phase.items / seconds) : 0) + "}");
+                separator = ",\n";
+            }
+        }
+
+        writer.write("\n  ]\n}\n");
+    }
+
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+
+        long total = 0;
+        for (long bytes : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    public final class Phase implements AutoCloseable {
+        private final String name;
+        private volatile long items;
+
+        private long startWall;
+        private long startCpu;
+        private long startAllocated;
+
+        private long wallNanos = -1;
+        private long cpuNanos;
+        private long allocatedBytes;
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        private void begin() {
+            startAllocated = allocatedBytes();
+            startCpu = processCpuNanos();
+            startWall = System.nanoTime();
+        }
+
+        /**
+         * Sets the number of items (classes, entries, references...) the phase processed.
+         */
+        public void setItems(long items) {
+            this.items = items;
+        }
+
+        @Override
+        public void close() {
+            if (!enabled || wallNanos >= 0) {
+                return;
+            }
+
+            long wall = System.nanoTime() - startWall;
+            long cpu = processCpuNanos();
+            long allocated = allocatedBytes();
+
+            synchronized (phases) {
+                cpuNanos = cpu >= 0 && startCpu >= 0 ? cpu - startCpu : -1;
+                allocatedBytes = allocated >= 0 && startAllocated >= 0 ? Math.max(0, allocated - startAllocated) : -1;
+                wallNanos = wall;
+            }
+        }
+    }
+}
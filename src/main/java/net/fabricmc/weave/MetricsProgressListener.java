@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.fabricmc.weave;
+
+import cuchaz.enigma.ProgressListener;
+
+/**
+ * Counts the work Enigma reports as done as the items of a phase.
+ */
+public class MetricsProgressListener implements ProgressListener {
+    private final Metrics.Phase phase;
+
+    public MetricsProgressListener(Metrics.Phase phase) {
+        this.phase = phase;
+    }
+
+    @Override
+    public void init(int totalWork, String title) {
+        phase.setItems(0);
+    }
+
+    @Override
+    public void step(int numDone, String message) {
+        phase.setItems(numDone);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import net.fabricmc.weave.util.HierarchyIndex;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fields of a class must keep distinct names after mapping, and so must methods with
+ * the same descriptor, including methods of superclasses and interfaces that they
+ * don't override: otherwise the mapped method would override one it didn't before.
+ * Collisions between unmapped members are left alone, as they are already in the JAR.
+ */
+class NameCollisionRule implements MappingRule {
+    private final Map<ClassEntry, Map<String, List<FieldEntry>>> fields = new ConcurrentHashMap<>();
+    private final Map<ClassEntry, Map<String, List<MethodEntry>>> methods = new ConcurrentHashMap<>();
+
+    @Override
+    public void visitField(FieldEntry entry, AccessFlags access, RuleContext context, Reporter reporter) {
+        add(fields, entry.getContainingClass(), context.getMapper().deobfuscate(entry).getName(), entry);
+    }
+
+    @Override
+    public void visitMethod(MethodEntry entry, AccessFlags access, RuleContext context, Reporter reporter) {
+        if (entry.isConstructor() || entry.getName().equals("<clinit>") || access.isPrivate()) {
+            return;
+        }
+
+        MethodEntry deobf = context.getMapper().deobfuscate(entry);
+        add(methods, entry.getContainingClass(), deobf.getName() + deobf.getDesc(), entry);
+    }
+
+    private static <T> void add(Map<ClassEntry, Map<String, List<T>>> map, ClassEntry owner, String name, T entry) {
+        Map<String, List<T>> members = map.computeIfAbsent(owner, k -> new TreeMap<>());
+        synchronized (members) {
+            members.computeIfAbsent(name, k -> new ArrayList<>(1)).add(entry);
+        }
+    }
+
+    @Override
+    public void finish(RuleContext context, Reporter reporter) {
+        HierarchyIndex<ClassEntry> hierarchy = context.getHierarchy();
+
+        // visits happen in any order, so everything is sorted to report in the same order every run
+        for (ClassEntry owner : sortedOwners(fields)) {
+            for (List<FieldEntry> collisions : fields.get(owner).values()) {
+                if (collisions.size() > 1 && anyMapped(collisions, context)) {
+                    for (FieldEntry entry : sorted(collisions)) {
+                        reporter.report(entry, owner, null);
+                    }
+                }
+            }
+        }
+
+        for (ClassEntry owner : sortedOwners(methods)) {
+            for (Map.Entry<String, List<MethodEntry>> method : methods.get(owner).entrySet()) {
+                List<MethodEntry> entries = sorted(method.getValue());
+                if (entries.size() > 1 && anyMapped(entries, context)) {
+                    for (MethodEntry entry : entries) {
+                        reporter.report(entry, owner, null);
+                    }
+                }
+
+                for (MethodEntry entry : entries) {
+                    reportOverrides(context, hierarchy, owner, method.getKey(), entry, reporter);
+                }
+            }
+        }
+    }
+
+    private void reportOverrides(RuleContext context, HierarchyIndex<ClassEntry> hierarchy, ClassEntry owner, String name, MethodEntry entry, Reporter reporter) {
+        for (ClassEntry ancestor : hierarchy.getAncestors(owner)) {
+            Map<String, List<MethodEntry>> ancestorMethods = methods.get(ancestor);
+            List<MethodEntry> collisions = ancestorMethods != null ? ancestorMethods.get(name) : null;
+            if (collisions == null) {
+                continue;
+            }
+
+            for (MethodEntry collision : sorted(collisions)) {
+                // an override is mapped together with the method it overrides
+                if ((!collision.getName().equals(entry.getName()) || !collision.getDesc().equals(entry.getDesc()))
+                        && (isMapped(entry, context) || isMapped(collision, context))) {
+                    reporter.report(entry, owner, ancestor);
+                    reporter.report(collision, owner, ancestor);
+                }
+            }
+        }
+    }
+
+    private static boolean anyMapped(List<? extends Entry<?>> entries, RuleContext context) {
+        for (Entry<?> entry : entries) {
+            if (isMapped(entry, context)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the entry has a mapping of its own or takes one from a method it overrides
+     */
+    private static boolean isMapped(Entry<?> entry, RuleContext context) {
+        return context.getMappings().get(entry) != null || !context.getMapper().deobfuscate(entry).getName().equals(entry.getName());
+    }
+
+    private static List<ClassEntry> sortedOwners(Map<ClassEntry, ?> map) {
+        List<ClassEntry> owners = new ArrayList<>(map.keySet());
+        owners.sort(Comparator.comparing(ClassEntry::getFullName));
+        return owners;
+    }
+
+    private static <T extends Entry<?>> List<T> sorted(List<T> entries) {
+        List<T> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(Entry::toString));
+        return sorted;
+    }
+
+    @Override
+    public String getMessage(MappingError error, RuleContext context) {
+        String owner = context.getCache().deobfuscate(error.getContextClass()).toString();
+        Entry<?> deobf = context.getMapper().deobfuscate(error.getEntry());
+
+        if (deobf instanceof FieldEntry) {
+            return "ERROR: Fields collide after mapping: " + owner + "." + deobf.getName();
+        } else {
+            return "ERROR: Methods collide after mapping: " + owner + "." + deobf.getName() + ((MethodEntry) deobf).getDesc();
+        }
+    }
+
+    @Override
+    public String getCause(MappingError error, RuleContext context) {
+        if (error.getEntry() instanceof FieldEntry) {
+            FieldEntry entry = (FieldEntry) error.getEntry();
+            return "field " + entry.getName() + ":" + entry.getDesc();
+        } else {
+            MethodEntry entry = (MethodEntry) error.getEntry();
+            return "method " + entry.getContainingClass().getFullName() + "." + entry.getName() + entry.getDesc();
+        }
+    }
+}
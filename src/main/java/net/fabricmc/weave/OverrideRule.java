@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.analysis.index.EntryIndex;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+
+/**
+ * Methods that override each other must not be mapped to different names. Enigma only
+ * applies the mapping of the overridden method, so the other one is silently lost.
+ */
+class OverrideRule implements MappingRule {
+    @Override
+    public void visitMethod(MethodEntry entry, AccessFlags access, RuleContext context, Reporter reporter) {
+        EntryMapping mapping = context.getMappings().get(entry);
+        if (mapping == null || !isOverridable(entry, access)) {
+            return;
+        }
+
+        EntryIndex entryIndex = context.getIndex().getEntryIndex();
+        for (ClassEntry ancestor : context.getHierarchy().getAncestors(entry.getContainingClass())) {
+            MethodEntry overridden = new MethodEntry(ancestor, entry.getName(), entry.getDesc());
+            if (!entryIndex.hasMethod(overridden) || !isOverridable(overridden, entryIndex.getMethodAccess(overridden))) {
+                continue;
+            }
+
+            EntryMapping overriddenMapping = context.getMappings().get(overridden);
+            if (overriddenMapping != null && !overriddenMapping.getTargetName().equals(mapping.getTargetName())) {
+                reporter.report(entry, entry.getContainingClass(), ancestor);
+            }
+        }
+    }
+
+    @Override
+    public String getMessage(MappingError error, RuleContext context) {
+        MethodEntry entry = (MethodEntry) error.getEntry();
+        MethodEntry overridden = new MethodEntry(error.getTargetClass(), entry.getName(), entry.getDesc());
+        ResolutionCache cache = context.getCache();
+
+        return "ERROR: Overriding method mapped to another name: " + cache.deobfuscate(error.getContextClass()) + "." + context.getMappings().get(entry).getTargetName()
+                + " overrides " + cache.deobfuscate(error.getTargetClass()) + "." + context.getMappings().get(overridden).getTargetName();
+    }
+
+    @Override
+    public String getCause(MappingError error, RuleContext context) {
+        MethodEntry entry = (MethodEntry) error.getEntry();
+        return "method " + entry.getName() + entry.getDesc();
+    }
+
+    private static boolean isOverridable(MethodEntry entry, AccessFlags access) {
+        return !entry.isConstructor() && !access.isPrivate() && !access.isStatic();
+    }
+}
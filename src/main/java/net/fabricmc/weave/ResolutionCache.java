@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import com.google.common.collect.ImmutableList;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-run memoization of the class-level lookups done while validating references.
+ * Safe to share between worker threads.
+ */
+class ResolutionCache {
+    // ConcurrentHashMap can't hold null, so the default package is stored as this marker
+    private static final String NO_PACKAGE = new String("");
+
+    private final EntryRemapper mapper;
+
+    private final Map<ClassEntry, ClassEntry> deobfClasses = new ConcurrentHashMap<>();
+    private final Map<ClassEntry, String> deobfPackages = new ConcurrentHashMap<>();
+    private final Map<ClassEntry, List<ClassEntry>> outerClasses = new ConcurrentHashMap<>();
+
+    ResolutionCache(EntryRemapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public ClassEntry deobfuscate(ClassEntry entry) {
+        return deobfClasses.computeIfAbsent(entry, mapper::deobfuscate);
+    }
+
+    public String getDeobfPackage(ClassEntry entry) {
+        String packageName = deobfPackages.computeIfAbsent(entry, e -> {
+            String name = deobfuscate(e).getPackageName();
+            return name != null ? name : NO_PACKAGE;
+        });
+
+        return packageName == NO_PACKAGE ? null : packageName;
+    }
+
+    public List<ClassEntry> getOuterClasses(ClassEntry entry) {
+        return outerClasses.computeIfAbsent(entry, e -> {
+            ImmutableList.Builder<ClassEntry> builder = ImmutableList.builder();
+
+            ClassEntry currentEntry = e;
+            while (currentEntry != null) {
+                builder.add(currentEntry);
+                currentEntry = currentEntry.getOuterClass();
+            }
+
+            return builder.build();
+        });
+    }
+}
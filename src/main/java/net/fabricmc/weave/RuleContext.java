@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import net.fabricmc.weave.util.HierarchyIndex;
+
+/**
+ * What {@link MappingRule}s validate: the JAR index and its class hierarchy, and the
+ * mappings, both as read and as resolved by Enigma.
+ */
+public final class RuleContext {
+    private final JarIndex index;
+    private final HierarchyIndex<ClassEntry> hierarchy;
+    private final EntryTree<EntryMapping> mappings;
+    private final EntryRemapper mapper;
+    private final ResolutionCache cache;
+
+    RuleContext(JarIndex index, HierarchyIndex<ClassEntry> hierarchy, EntryTree<EntryMapping> mappings) {
+        this.index = index;
+        this.hierarchy = hierarchy;
+        this.mappings = mappings;
+        this.mapper = EntryRemapper.mapped(index, mappings);
+        this.cache = new ResolutionCache(mapper);
+    }
+
+    public JarIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the class hierarchy of the JAR, for ancestor, descendant and subtype queries
+     */
+    public HierarchyIndex<ClassEntry> getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * @return the mappings as read, where an overriding method can have its own mapping
+     */
+    public EntryTree<EntryMapping> getMappings() {
+        return mappings;
+    }
+
+    /**
+     * @return the mappings as Enigma applies them, where overriding methods take the mapping of the method they override
+     */
+    public EntryRemapper getMapper() {
+        return mapper;
+    }
+
+    ResolutionCache getCache() {
+        return cache;
+    }
+}
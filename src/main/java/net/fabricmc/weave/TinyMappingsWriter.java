@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.translation.MappingTranslator;
+import cuchaz.enigma.translation.Translator;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.VoidEntryResolver;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.EntryTreeNode;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import net.fabricmc.weave.util.AtomicFileOutput;
+import net.fabricmc.weave.util.EnigmaUtils;
+import net.fabricmc.weave.util.Utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes Enigma mappings as Tiny v1.
+ *
+ * Top-level classes are written in order of their names, each followed by its fields,
+ * methods and inner classes, which are in turn sorted by Enigma's natural entry order.
+ */
+public class TinyMappingsWriter implements FileMappingsWriter {
+    private static final String VERSION_CONSTANT = "v1";
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MIN_SHARD_SIZE = 64;
+    private static final int MAX_SHARD_SIZE = 1024;
+    private static final int COPY_BUFFER_SIZE = 1 << 13;
+
+    private final String nameObf;
+    private final String nameDeobf;
+    private final int threads;
+
+    public TinyMappingsWriter(String nameObf, String nameDeobf) {
+        this(nameObf, nameDeobf, 1);
+    }
+
+    /**
+     * @param threads how many threads serialize top-level classes; the output is the same for any count
+     */
+    public TinyMappingsWriter(String nameObf, String nameDeobf, int threads) {
+        this.nameObf = nameObf;
+        this.nameDeobf = nameDeobf;
+        this.threads = Math.max(1, threads);
+    }
+
+    @Override
+    public String writeFile(EntryTree<EntryMapping> mappings, Path path, ProgressListener progress) throws IOException {
+        try (AtomicFileOutput output = new AtomicFileOutput(path); Writer writer = newWriter(output.getStream())) {
+            writeHeader(writer);
+
+            Translator translator = new MappingTranslator(mappings, VoidEntryResolver.INSTANCE);
+            List<EntryTreeNode<EntryMapping>> roots = getRootNodes(mappings);
+
+            progress.init(roots.size(), "Writing Tiny mappings");
+            if (threads > 1 && roots.size() > MIN_SHARD_SIZE) {
+                writeSharded(writer, roots, translator, progress);
+            } else {
+                int done = 0;
+                for (EntryTreeNode<EntryMapping> node : roots) {
+                    writeClass(writer, node, translator);
+                    progress.step(++done, node.getEntry().getName());
+                }
+            }
+
+            writer.flush();
+            output.commit();
+            return output.getHash();
+        }
+    }
+
+    /**
+     * Splits the top-level classes into consecutive ranges, serializes each range into
+     * its own buffer on a worker thread, and writes the buffers in order as they are done.
+     * At most {@code threads * 2} ranges are queued or held at once, so memory use doesn't
+     * grow with the size of the mappings.
+     */
+    private void writeSharded(Writer writer, List<EntryTreeNode<EntryMapping>> roots, Translator translator, ProgressListener progress) throws IOException {
+        int shardSize = Math.min(MAX_SHARD_SIZE, Math.max(MIN_SHARD_SIZE, roots.size() / (threads * 4)));
+        int maxPending = threads * 2;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            Iterator<List<EntryTreeNode<EntryMapping>>> shards = Lists.partition(roots, shardSize).iterator();
+            Deque<Future<StringWriter>> pending = new ArrayDeque<>(maxPending);
+            char[] chars = new char[COPY_BUFFER_SIZE];
+            int done = 0;
+
+            while (shards.hasNext() || !pending.isEmpty()) {
+                while (shards.hasNext() && pending.size() < maxPending) {
+                    List<EntryTreeNode<EntryMapping>> shard = shards.next();
+                    pending.add(executor.submit(() -> {
+                        StringWriter out = new StringWriter();
+                        for (EntryTreeNode<EntryMapping> node : shard) {
+                            writeClass(out, node, translator);
+                        }
+                        return out;
+                    }));
+                }
+
+                // copied in chunks rather than through toString(), which would copy the whole shard again
+                StringBuffer buffer = pending.remove().get().getBuffer();
+                for (int start = 0; start < buffer.length(); start += chars.length) {
+                    int end = Math.min(start + chars.length, buffer.length());
+                    buffer.getChars(start, end, chars, 0);
+                    writer.write(chars, 0, end - start);
+                }
+
+                done = Math.min(done + shardSize, roots.size());
+                progress.step(done, roots.get(done - 1).getEntry().getName());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    void writeHeader(Writer writer) throws IOException {
+        writeLine(writer, VERSION_CONSTANT, nameObf, nameDeobf);
+    }
+
+    static List<EntryTreeNode<EntryMapping>> getRootNodes(EntryTree<EntryMapping> mappings) {
+        List<EntryTreeNode<EntryMapping>> roots = new ArrayList<>();
+        for (EntryTreeNode<EntryMapping> node : mappings) {
+            if (node.getEntry().getParent() == null) {
+                roots.add(node);
+            }
+        }
+
+        roots.sort(Comparator.comparing(node -> node.getEntry().toString()));
+        return roots;
+    }
+
+    static Writer newWriter(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Writes a class, its members and its inner classes.
+     */
+    void writeClass(Writer writer, EntryTreeNode<EntryMapping> node, Translator translator) throws IOException {
+        ClassEntry entry = (ClassEntry) node.getEntry();
+        EntryMapping mapping = node.getValue();
+
+        if (mapping != null && !entry.getName().equals(mapping.getTargetName())) {
+            ClassEntry translatedEntry = translator.translate(entry);
+
+            writer.write("CLASS\t");
+            Utils.appendWithoutNone(writer, entry.getFullName());
+            writer.write('\t');
+            Utils.appendWithoutNone(writer, translatedEntry.getFullName());
+            writer.write('\n');
+        }
+
+        writeMembers(writer, node, FieldEntry.class);
+        writeMembers(writer, node, MethodEntry.class);
+
+        for (EntryTreeNode<EntryMapping> child : sortedChildren(node, ClassEntry.class)) {
+            writeClass(writer, child, translator);
+        }
+    }
+
+    private void writeMembers(Writer writer, EntryTreeNode<EntryMapping> node, Class<?> type) throws IOException {
+        EntryTreeNode<EntryMapping> previous = null;
+
+        for (EntryTreeNode<EntryMapping> child : sortedChildren(node, type)) {
+            Entry<?> entry = child.getEntry();
+            EntryMapping mapping = child.getValue();
+
+            // as of enigma 0.13.1, some members can appear twice under a class; duplicates sort next to each other
+            if (previous != null && compare(previous.getEntry(), entry) == 0 && Objects.equals(getTargetName(previous), getTargetName(child))) {
+                continue;
+            }
+            previous = child;
+
+            if (mapping != null && !entry.getName().equals(mapping.getTargetName())) {
+                EnigmaUtils.appendEntry(writer, entry, true);
+                writer.write('\t');
+                writer.write(mapping.getTargetName());
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static String getTargetName(EntryTreeNode<EntryMapping> node) {
+        return node.getValue() != null ? node.getValue().getTargetName() : null;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compare(Entry<?> a, Entry<?> b) {
+        return ((Comparable) a).compareTo(b);
+    }
+
+    private static List<EntryTreeNode<EntryMapping>> sortedChildren(EntryTreeNode<EntryMapping> node, Class<?> type) {
+        List<EntryTreeNode<EntryMapping>> children = new ArrayList<>();
+        for (EntryTreeNode<EntryMapping> child : node.getChildNodes()) {
+            if (type.isInstance(child.getEntry())) {
+                children.add(child);
+            }
+        }
+
+        children.sort((a, b) -> compare(a.getEntry(), b.getEntry()));
+        return children;
+    }
+
+    private static void writeLine(Writer writer, String... data) throws IOException {
+        for (int i = 0; i < data.length; i++) {
+            if (i > 0) {
+                writer.write('\t');
+            }
+            writer.write(data[i]);
+        }
+        writer.write('\n');
+    }
+}
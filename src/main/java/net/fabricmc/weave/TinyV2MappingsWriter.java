@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.translation.MappingTranslator;
+import cuchaz.enigma.translation.Translator;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.VoidEntryResolver;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.EntryTreeNode;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import net.fabricmc.weave.util.AtomicFileOutput;
+import net.fabricmc.weave.util.Utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes Tiny v2 with the obfuscated names, the names from the written mappings and
+ * any number of extra namespaces taken from additional mapping sets.
+ *
+ * All trees are walked together in the same order as {@link TinyMappingsWriter}, so an
+ * entry only present in an extra namespace is still written.
+ */
+public class TinyV2MappingsWriter implements FileMappingsWriter {
+    private final List<String> namespaces;
+    private final List<EntryTree<EntryMapping>> extraMappings;
+
+    /**
+     * @param namespaces the obfuscated namespace, the namespace of the written mappings, then one per extra mapping set
+     */
+    public TinyV2MappingsWriter(List<String> namespaces, List<EntryTree<EntryMapping>> extraMappings) {
+        if (namespaces.size() != extraMappings.size() + 2) {
+            throw new IllegalArgumentException("Expected " + (extraMappings.size() + 2) + " namespaces, got " + namespaces.size());
+        }
+
+        this.namespaces = namespaces;
+        this.extraMappings = extraMappings;
+    }
+
+    @Override
+    public String writeFile(EntryTree<EntryMapping> mappings, Path path, ProgressListener progress) throws IOException {
+        List<EntryTree<EntryMapping>> trees = new ArrayList<>();
+        trees.add(mappings);
+        trees.addAll(extraMappings);
+
+        try (AtomicFileOutput output = new AtomicFileOutput(path); Writer writer = TinyMappingsWriter.newWriter(output.getStream())) {
+            writer.write("tiny\t2\t0");
+            for (String namespace : namespaces) {
+                writer.write('\t');
+                writer.write(namespace);
+            }
+            writer.write('\n');
+
+            List<Translator> translators = new ArrayList<>();
+            for (EntryTree<EntryMapping> tree : trees) {
+                translators.add(new MappingTranslator(tree, VoidEntryResolver.INSTANCE));
+            }
+
+            Map<Entry<?>, EntryTreeNode<EntryMapping>[]> roots = new LinkedHashMap<>();
+            for (int i = 0; i < trees.size(); i++) {
+                for (EntryTreeNode<EntryMapping> node : TinyMappingsWriter.getRootNodes(trees.get(i))) {
+                    group(roots, node, i, trees.size());
+                }
+            }
+
+            List<Entry<?>> rootEntries = new ArrayList<>(roots.keySet());
+            rootEntries.sort((a, b) -> a.toString().compareTo(b.toString()));
+
+            progress.init(rootEntries.size(), "Writing Tiny mappings");
+            int done = 0;
+            for (Entry<?> root : rootEntries) {
+                writeClass(writer, (ClassEntry) root, roots.get(root), translators);
+                progress.step(++done, root.getName());
+            }
+
+            writer.flush();
+            output.commit();
+            return output.getHash();
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void group(Map<Entry<?>, EntryTreeNode<EntryMapping>[]> groups, EntryTreeNode<EntryMapping> node, int tree, int treeCount) {
+        groups.computeIfAbsent(node.getEntry(), e -> new EntryTreeNode[treeCount])[tree] = node;
+    }
+
+    private void writeClass(Writer writer, ClassEntry entry, EntryTreeNode<EntryMapping>[] nodes, List<Translator> translators) throws IOException {
+        Map<Entry<?>, EntryTreeNode<EntryMapping>[]> children = new LinkedHashMap<>();
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] != null) {
+                for (EntryTreeNode<EntryMapping> child : nodes[i].getChildNodes()) {
+                    group(children, child, i, nodes.length);
+                }
+            }
+        }
+
+        List<String> memberLines = new ArrayList<>();
+        for (Entry<?> child : sortedChildren(children, FieldEntry.class)) {
+            addMember(memberLines, "f", ((FieldEntry) child).getDesc().toString(), child, children.get(child));
+        }
+        for (Entry<?> child : sortedChildren(children, MethodEntry.class)) {
+            addMember(memberLines, "m", ((MethodEntry) child).getDesc().toString(), child, children.get(child));
+        }
+
+        if (!memberLines.isEmpty() || isRenamed(entry, nodes)) {
+            writer.write("c\t");
+            Utils.appendWithoutNone(writer, entry.getFullName());
+            for (Translator translator : translators) {
+                writer.write('\t');
+                Utils.appendWithoutNone(writer, translator.translate(entry).getFullName());
+            }
+            writer.write('\n');
+
+            for (String line : memberLines) {
+                writer.write(line);
+            }
+        }
+
+        for (Entry<?> child : sortedChildren(children, ClassEntry.class)) {
+            writeClass(writer, (ClassEntry) child, children.get(child), translators);
+        }
+    }
+
+    private void addMember(List<String> lines, String type, String desc, Entry<?> entry, EntryTreeNode<EntryMapping>[] nodes) throws IOException {
+        if (!isRenamed(entry, nodes)) {
+            return;
+        }
+
+        StringBuilder line = new StringBuilder("\t").append(type).append('\t');
+        Utils.appendDescWithoutNone(line, desc);
+        line.append('\t').append(entry.getName());
+        for (EntryTreeNode<EntryMapping> node : nodes) {
+            EntryMapping mapping = node != null ? node.getValue() : null;
+            line.append('\t').append(mapping != null ? mapping.getTargetName() : entry.getName());
+        }
+        lines.add(line.append('\n').toString());
+    }
+
+    private static boolean isRenamed(Entry<?> entry, EntryTreeNode<EntryMapping>[] nodes) {
+        for (EntryTreeNode<EntryMapping> node : nodes) {
+            if (node != null && node.getValue() != null && !entry.getName().equals(node.getValue().getTargetName())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static List<Entry<?>> sortedChildren(Map<Entry<?>, EntryTreeNode<EntryMapping>[]> children, Class<?> type) {
+        List<Entry<?>> entries = new ArrayList<>();
+        for (Entry<?> entry : children.keySet()) {
+            if (type.isInstance(entry)) {
+                entries.add(entry);
+            }
+        }
+
+        entries.sort((a, b) -> ((Comparable) a).compareTo(b));
+        return entries;
+    }
+}
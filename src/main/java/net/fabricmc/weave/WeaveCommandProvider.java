@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The commands that come with Weave.
+ */
+public class WeaveCommandProvider implements CommandProvider {
+    @Override
+    public List<CommandDescriptor> getCommands() {
+        return Arrays.asList(
+                new CommandDescriptor("daemon", "[--port=<port>]",
+                        0, 0, "net.fabricmc.weave.CommandDaemon", false),
+                new CommandDescriptor("diffMappings", "<old-mappings> <new-mappings> [--from=<namespace>] [--to=<namespace>] [--delta=<enigma-dir>]",
+                        2, 2, "net.fabricmc.weave.CommandDiffMappings", false),
+                new CommandDescriptor("findMappingErrors", "<obf jar> <mappings> [--threads=<count>] [--rules=<rule>[,<rule>...]] [--format=text|jsonl|tsv] [--spill-threshold=<errors>]",
+                        2, 2, "net.fabricmc.weave.CommandFindMappingErrors", true),
+                new CommandDescriptor("lookup", "<tiny-file> <name>... [--from=<namespace>] [--to=<namespace>]",
+                        2, -1, "net.fabricmc.weave.CommandLookup", false),
+                new CommandDescriptor("pipeline", "<script> | <command> [args]... [; <command> [args]...]... (prefix a command with & to run it alongside the previous one)",
+                        1, -1, "net.fabricmc.weave.CommandPipeline", false),
+                new CommandDescriptor("remapJar", "<input-jar> <enigma-or-tiny-mappings> <output-jar> [--from=<namespace>] [--to=<namespace>]",
+                        3, 3, "net.fabricmc.weave.CommandRemapJar", false),
+                new CommandDescriptor("tinyify", "<input-jar> <enigma-mappings> <output-tiny> [name-obf] [name-deobf] [--v2 | --binary] [--namespace=<name>=<enigma-mappings>]... [--declarations-only] [--incremental=<state-file>] [--threads=<count>]",
+                        3, 5, "net.fabricmc.weave.CommandTinyify", true)
+        );
+    }
+}
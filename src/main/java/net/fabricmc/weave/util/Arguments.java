@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command arguments split into positional arguments and {@code --name[=value]} options.
+ */
+public final class Arguments {
+    private final List<String> positional = new ArrayList<>();
+    private final ListMultimap<String, String> options = ArrayListMultimap.create();
+
+    private Arguments() {
+
+    }
+
+    public static Arguments parse(String[] args) {
+        Arguments arguments = new Arguments();
+
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.length() > 2) {
+                int split = arg.indexOf('=');
+                if (split >= 0) {
+                    arguments.options.put(arg.substring(2, split), arg.substring(split + 1));
+                } else {
+                    arguments.options.put(arg.substring(2), "");
+                }
+            } else {
+                arguments.positional.add(arg);
+            }
+        }
+
+        return arguments;
+    }
+
+    public int size() {
+        return positional.size();
+    }
+
+    public String get(int index) {
+        return positional.get(index);
+    }
+
+    public String get(int index, String defaultValue) {
+        return index < positional.size() ? positional.get(index) : defaultValue;
+    }
+
+    public boolean has(String option) {
+        return options.containsKey(option);
+    }
+
+    public String option(String option, String defaultValue) {
+        List<String> values = options.get(option);
+        return values.isEmpty() ? defaultValue : values.get(values.size() - 1);
+    }
+
+    public List<String> options(String option) {
+        return options.get(option);
+    }
+
+    public int intOption(String option, int defaultValue) {
+        String value = option(option, null);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + option + " expects a number, got '" + value + "'");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes a file through a temporary file next to it, hashing the content on the way.
+ * {@link #commit} moves the temporary file into place in one atomic step, unless the
+ * file already has the same content, in which case it is left untouched. Closing without
+ * committing drops the temporary file, so a failed or interrupted write never leaves a
+ * partial file behind.
+ */
+public final class AtomicFileOutput implements Closeable {
+    private final Path path;
+    private final Path tmp;
+    private final HashingOutputStream out;
+    private String hash;
+
+    public AtomicFileOutput(Path path) throws IOException {
+        this.path = path;
+        this.tmp = createSibling(path);
+        this.out = new HashingOutputStream(Hashing.sha256(), new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16));
+    }
+
+    /**
+     * Unlike {@link Files#createTempFile}, which makes the file only readable by its owner,
+     * this creates it with the same permissions as any other new file, which it keeps once moved.
+     */
+    private static Path createSibling(Path path) throws IOException {
+        while (true) {
+            try {
+                return Files.createFile(path.resolveSibling(path.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp"));
+            } catch (FileAlreadyExistsException e) {
+                // taken, try another name
+            }
+        }
+    }
+
+    /**
+     * @return the stream to write the content to; closing it is allowed
+     */
+    public OutputStream getStream() {
+        return out;
+    }
+
+    /**
+     * Replaces the file with what was written, if that is different.
+     *
+     * @return whether the file was replaced
+     */
+    public boolean commit() throws IOException {
+        out.close();
+        hash = out.hash().toString();
+
+        if (Files.isRegularFile(path) && Files.size(path) == Files.size(tmp) && Utils.sha256(path).equals(hash)) {
+            Files.delete(tmp);
+            return false;
+        }
+
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * @return the SHA-256 of the content, once committed
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (hash == null) {
+            try {
+                out.close();
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+}
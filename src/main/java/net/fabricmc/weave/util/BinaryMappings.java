@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memory-mapped reader for the binary mapping format, which holds the same mappings as
+ * Tiny v1 in a form that needs no parsing: opening a file only checks its header, and
+ * lookups are binary searches over the mapped bytes.
+ *
+ * All numbers are big-endian ints. The file starts with a header of eight: the magic
+ * "WVBM", the version, the string, class, field and method counts, and the string ids
+ * of the two namespace names. The string table follows: stringCount + 1 offsets into
+ * the string data, then the UTF-8 data itself, padded to a multiple of 4. Strings are
+ * deduplicated and sorted by their bytes, so comparing ids compares names.
+ *
+ * Then come the class records, sorted by name, each holding the name, the target name
+ * (the name itself if only members are renamed) and the index of the class's first
+ * field and first method record. The field and then method records hold the name, the
+ * descriptor and the target name, grouped by class and sorted by name and descriptor
+ * within it; the records of a class end where those of the next class start. Names have
+ * no "none/" prefix.
+ */
+public final class BinaryMappings implements NameMapper {
+    private static final int MAGIC = 0x5756424D; // WVBM
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int CLASS_SIZE = 16;
+    private static final int MEMBER_SIZE = 12;
+
+    private final ByteBuffer buffer;
+    private final int stringCount;
+    private final int classCount;
+    private final int fieldCount;
+    private final int methodCount;
+    private final int stringData;
+    private final int classes;
+    private final int fields;
+    private final int methods;
+
+    private BinaryMappings(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary mapping file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary mapping version " + buffer.getInt(4) + ", expected " + VERSION);
+        }
+
+        stringCount = buffer.getInt(8);
+        classCount = buffer.getInt(12);
+        fieldCount = buffer.getInt(16);
+        methodCount = buffer.getInt(20);
+
+        // the counts decide where everything is, so they are checked against the size before use
+        if (stringCount < 0 || classCount < 0 || fieldCount < 0 || methodCount < 0 || HEADER_SIZE + (stringCount + 1L) * 4 > buffer.limit()) {
+            throw new IOException("Truncated binary mapping file");
+        }
+
+        stringData = HEADER_SIZE + (stringCount + 1) * 4;
+        long end = align(stringData + (long) buffer.getInt(HEADER_SIZE + stringCount * 4))
+                + (long) classCount * CLASS_SIZE + (long) fieldCount * MEMBER_SIZE + (long) methodCount * MEMBER_SIZE;
+        if (end != buffer.limit()) {
+            throw new IOException("Truncated binary mapping file");
+        }
+
+        classes = align(stringData + buffer.getInt(HEADER_SIZE + stringCount * 4));
+        fields = classes + classCount * CLASS_SIZE;
+        methods = fields + fieldCount * MEMBER_SIZE;
+    }
+
+    public static BinaryMappings read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to map");
+            }
+            return new BinaryMappings(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public List<String> getNamespaces() {
+        return Arrays.asList(getString(buffer.getInt(24)), getString(buffer.getInt(28)));
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public int getMethodCount() {
+        return methodCount;
+    }
+
+    public String getClassName(int index) {
+        return getString(buffer.getInt(classes + index * CLASS_SIZE));
+    }
+
+    public String getClassTarget(int index) {
+        return getString(buffer.getInt(classes + index * CLASS_SIZE + 4));
+    }
+
+    @Override
+    public String mapClass(String name) {
+        int index = findClass(name);
+        return index >= 0 ? getClassTarget(index) : null;
+    }
+
+    @Override
+    public String mapField(String owner, String name, String desc) {
+        return findMember(fields, fieldCount, 8, owner, name, desc);
+    }
+
+    @Override
+    public String mapMethod(String owner, String name, String desc) {
+        return findMember(methods, methodCount, 12, owner, name, desc);
+    }
+
+    private int findClass(String name) {
+        int id = findString(name);
+        if (id < 0) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = classCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Integer.compare(buffer.getInt(classes + mid * CLASS_SIZE), id);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param firstOffset the offset in a class record of the index of its first member of this kind
+     */
+    private String findMember(int records, int count, int firstOffset, String owner, String name, String desc) {
+        int owningClass = findClass(owner);
+        int nameId = findString(name);
+        int descId = findString(desc);
+        if (owningClass < 0 || nameId < 0 || descId < 0) {
+            return null;
+        }
+
+        int low = buffer.getInt(classes + owningClass * CLASS_SIZE + firstOffset);
+        int high = (owningClass + 1 < classCount ? buffer.getInt(classes + (owningClass + 1) * CLASS_SIZE + firstOffset) : count) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = records + mid * MEMBER_SIZE;
+            int cmp = Integer.compare(buffer.getInt(record), nameId);
+            if (cmp == 0) {
+                cmp = Integer.compare(buffer.getInt(record + 4), descId);
+            }
+
+            if (cmp == 0) {
+                return getString(buffer.getInt(record + 8));
+            } else if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return null;
+    }
+
+    private String getString(int id) {
+        int start = buffer.getInt(HEADER_SIZE + id * 4);
+        byte[] bytes = new byte[buffer.getInt(HEADER_SIZE + (id + 1) * 4) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(stringData + start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int findString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = stringCount - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int start = buffer.getInt(HEADER_SIZE + mid * 4);
+            int length = buffer.getInt(HEADER_SIZE + (mid + 1) * 4) - start;
+
+            int cmp = 0;
+            for (int i = 0; i < Math.min(length, bytes.length) && cmp == 0; i++) {
+                cmp = Integer.compare(buffer.get(stringData + start + i) & 0xFF, bytes[i] & 0xFF);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(length, bytes.length);
+            }
+
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+
+    private static long align(long offset) {
+        return (offset + 3) & ~3L;
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int cmp = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    /**
+     * Collects mappings and writes them in the binary format. Names may have "none/"
+     * prefixes, which are removed.
+     */
+    public static final class Builder {
+        private final String namespaceObf;
+        private final String namespaceDeobf;
+        private final Map<String, ClassData> classes = new HashMap<>();
+
+        public Builder(String namespaceObf, String namespaceDeobf) {
+            this.namespaceObf = namespaceObf;
+            this.namespaceDeobf = namespaceDeobf;
+        }
+
+        public void addClass(String name, String target) {
+            getClass(name).target = Utils.removeNone(target);
+        }
+
+        public void addField(String owner, String name, String desc, String target) {
+            getClass(owner).fields.put(name + '\0' + Utils.removeNoneFromDesc(desc), target);
+        }
+
+        public void addMethod(String owner, String name, String desc, String target) {
+            getClass(owner).methods.put(name + '\0' + Utils.removeNoneFromDesc(desc), target);
+        }
+
+        private ClassData getClass(String name) {
+            return classes.computeIfAbsent(Utils.removeNone(name), ClassData::new);
+        }
+
+        /**
+         * @return the SHA-256 of the written file
+         */
+        public String write(Path path) throws IOException {
+            Map<String, Integer> ids = createStringTable();
+            List<byte[]> strings = new ArrayList<>(ids.size());
+            for (String s : ids.keySet()) {
+                strings.add(s.getBytes(StandardCharsets.UTF_8));
+            }
+
+            List<ClassData> sortedClasses = new ArrayList<>(classes.values());
+            sortedClasses.sort(Comparator.comparingInt(c -> ids.get(c.name)));
+
+            List<int[]> fieldRecords = new ArrayList<>();
+            List<int[]> methodRecords = new ArrayList<>();
+            int[] firstFields = new int[sortedClasses.size()];
+            int[] firstMethods = new int[sortedClasses.size()];
+            for (int i = 0; i < sortedClasses.size(); i++) {
+                firstFields[i] = fieldRecords.size();
+                addRecords(fieldRecords, sortedClasses.get(i).fields, ids);
+                firstMethods[i] = methodRecords.size();
+                addRecords(methodRecords, sortedClasses.get(i).methods, ids);
+            }
+
+            try (AtomicFileOutput output = new AtomicFileOutput(path); DataOutputStream out = new DataOutputStream(output.getStream())) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(strings.size());
+                out.writeInt(sortedClasses.size());
+                out.writeInt(fieldRecords.size());
+                out.writeInt(methodRecords.size());
+                out.writeInt(ids.get(namespaceObf));
+                out.writeInt(ids.get(namespaceDeobf));
+
+                int offset = 0;
+                out.writeInt(offset);
+                for (byte[] s : strings) {
+                    offset += s.length;
+                    out.writeInt(offset);
+                }
+                for (byte[] s : strings) {
+                    out.write(s);
+                }
+                for (int i = offset; i < align(offset); i++) {
+                    out.write(0);
+                }
+
+                for (int i = 0; i < sortedClasses.size(); i++) {
+                    ClassData data = sortedClasses.get(i);
+                    out.writeInt(ids.get(data.name));
+                    out.writeInt(ids.get(data.target != null ? data.target : data.name));
+                    out.writeInt(firstFields[i]);
+                    out.writeInt(firstMethods[i]);
+                }
+
+                for (int[] record : fieldRecords) {
+                    writeRecord(out, record);
+                }
+                for (int[] record : methodRecords) {
+                    writeRecord(out, record);
+                }
+
+                output.commit();
+                return output.getHash();
+            }
+        }
+
+        /**
+         * @return the id of every string, in id order
+         */
+        private Map<String, Integer> createStringTable() {
+            Set<String> strings = new HashSet<>();
+            strings.add(namespaceObf);
+            strings.add(namespaceDeobf);
+
+            for (ClassData data : classes.values()) {
+                strings.add(data.name);
+                if (data.target != null) {
+                    strings.add(data.target);
+                }
+
+                for (Map<String, String> members : Arrays.asList(data.fields, data.methods)) {
+                    for (Map.Entry<String, String> member : members.entrySet()) {
+                        int split = member.getKey().indexOf('\0');
+                        strings.add(member.getKey().substring(0, split));
+                        strings.add(member.getKey().substring(split + 1));
+                        strings.add(member.getValue());
+                    }
+                }
+            }
+
+            List<byte[]> sorted = new ArrayList<>(strings.size());
+            for (String s : strings) {
+                sorted.add(s.getBytes(StandardCharsets.UTF_8));
+            }
+            sorted.sort(BinaryMappings::compareBytes);
+
+            Map<String, Integer> ids = new LinkedHashMap<>();
+            for (byte[] s : sorted) {
+                ids.put(new String(s, StandardCharsets.UTF_8), ids.size());
+            }
+            return ids;
+        }
+
+        private static void addRecords(List<int[]> records, Map<String, String> members, Map<String, Integer> ids) {
+            int start = records.size();
+            for (Map.Entry<String, String> member : members.entrySet()) {
+                int split = member.getKey().indexOf('\0');
+                records.add(new int[] { ids.get(member.getKey().substring(0, split)), ids.get(member.getKey().substring(split + 1)), ids.get(member.getValue()) });
+            }
+
+            records.subList(start, records.size()).sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+        }
+
+        private static void writeRecord(DataOutputStream out, int[] record) throws IOException {
+            for (int value : record) {
+                out.writeInt(value);
+            }
+        }
+
+        private static final class ClassData {
+            private final String name;
+            private String target;
+            private final Map<String, String> fields = new HashMap<>();
+            private final Map<String, String> methods = new HashMap<>();
+
+            private ClassData(String name) {
+                this.name = name;
+            }
+        }
+    }
+}
@@ -16,15 +16,28 @@
 
 package net.fabricmc.weave.util;
 
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.analysis.index.InheritanceIndex;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.serde.MappingFormat;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.EntryTreeNode;
+import cuchaz.enigma.translation.mapping.tree.HashEntryTree;
 import cuchaz.enigma.translation.representation.MethodDescriptor;
 import cuchaz.enigma.translation.representation.TypeDescriptor;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 import cuchaz.enigma.translation.representation.entry.Entry;
 import cuchaz.enigma.translation.representation.entry.FieldEntry;
 import cuchaz.enigma.translation.representation.entry.MethodEntry;
-import net.fabricmc.weave.CommandFindMappingErrors;
-import net.fabricmc.weave.CommandTinyify;
-import net.fabricmc.weave.Main;
+import net.fabricmc.weave.CommandContext;
+import net.fabricmc.weave.Metrics;
+import net.fabricmc.weave.MetricsProgressListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
 
 public class EnigmaUtils {
     public static String[] serializeEntry(Entry<?> entry, boolean removeNone, String... extraFields) {
@@ -38,8 +51,8 @@ public class EnigmaUtils {
             data[3] = entry.getName();
 
             if (removeNone) {
-                data[1] = Utils.NONE_PREFIX_REMOVER.map(data[1]);
-                data[2] = Utils.NONE_PREFIX_REMOVER.mapDesc(data[2]);
+                data[1] = Utils.removeNone(data[1]);
+                data[2] = Utils.removeNoneFromDesc(data[2]);
             }
         } else if (entry instanceof MethodEntry) {
             data = new String[4 + extraFields.length];
@@ -49,8 +62,8 @@ public class EnigmaUtils {
             data[3] = entry.getName();
 
             if (removeNone) {
-                data[1] = Utils.NONE_PREFIX_REMOVER.map(data[1]);
-                data[2] = Utils.NONE_PREFIX_REMOVER.mapMethodDesc(data[2]);
+                data[1] = Utils.removeNone(data[1]);
+                data[2] = Utils.removeNoneFromDesc(data[2]);
             }
         } else if (entry instanceof ClassEntry) {
             data = new String[2 + extraFields.length];
@@ -58,7 +71,7 @@ public class EnigmaUtils {
             data[1] = ((ClassEntry) entry).getFullName();
 
             if (removeNone) {
-                data[1] = Utils.NONE_PREFIX_REMOVER.map(data[1]);
+                data[1] = Utils.removeNone(data[1]);
             }
         }
 
@@ -69,6 +82,47 @@ public class EnigmaUtils {
         return data;
     }
 
+    /**
+     * Appends the fields {@link #serializeEntry} would return, tab-separated, without
+     * creating any intermediate strings.
+     *
+     * @return false if the entry is neither a class, a field nor a method, in which case nothing was appended
+     */
+    public static boolean appendEntry(Appendable out, Entry<?> entry, boolean removeNone) throws IOException {
+        String desc;
+        if (entry instanceof FieldEntry) {
+            out.append("FIELD\t");
+            desc = ((FieldEntry) entry).getDesc().toString();
+        } else if (entry instanceof MethodEntry) {
+            out.append("METHOD\t");
+            desc = ((MethodEntry) entry).getDesc().toString();
+        } else if (entry instanceof ClassEntry) {
+            out.append("CLASS\t");
+            appendName(out, ((ClassEntry) entry).getFullName(), removeNone);
+            return true;
+        } else {
+            return false;
+        }
+
+        appendName(out, entry.getContainingClass().getFullName(), removeNone);
+        out.append('\t');
+        if (removeNone) {
+            Utils.appendDescWithoutNone(out, desc);
+        } else {
+            out.append(desc);
+        }
+        out.append('\t').append(entry.getName());
+        return true;
+    }
+
+    private static void appendName(Appendable out, String name, boolean removeNone) throws IOException {
+        if (removeNone) {
+            Utils.appendWithoutNone(out, name);
+        } else {
+            out.append(name);
+        }
+    }
+
     public static Entry<?> deserializeEntry(String[] data) {
         if (data.length > 0) {
             if (data[0].equals("FIELD") && data.length >= 4) {
@@ -83,8 +137,71 @@ public class EnigmaUtils {
         return null;
     }
 
-    public static void addEnigmaCommands() {
-        Main.addCommand(new CommandTinyify());
-        Main.addCommand(new CommandFindMappingErrors());
+    /**
+     * @return the SHA-256 of a file, hashed once and shared with other commands
+     */
+    public static String getHash(CommandContext context, Path file) throws Exception {
+        return context.get("sha256", Collections.singletonList(file), () -> Utils.sha256(file));
+    }
+
+    public static JarIndex getJarIndex(CommandContext context, Path jar) throws Exception {
+        try (Metrics.Phase phase = context.metrics().start("jarIndex")) {
+            JarIndex index = context.get("jarIndex", Collections.singletonList(jar), () -> JarIndexCache.load(jar, getHash(context, jar), context.out(), ProgressListener.none()));
+            phase.setItems(index.getEntryIndex().getClasses().size());
+            return index;
+        }
+    }
+
+    /**
+     * @return an index of the classes and members declared in the JAR, with only the references made by
+     *         synthetic methods, so that bridge methods resolve as in the full index
+     */
+    public static JarIndex getDeclarationIndex(CommandContext context, Path jar) throws Exception {
+        try (Metrics.Phase phase = context.metrics().start("jarIndex")) {
+            JarIndex index = context.get("declarationIndex", Collections.singletonList(jar), () -> JarIndexCache.index(JarScan.scan(jar, true), ProgressListener.none()));
+            phase.setItems(index.getEntryIndex().getClasses().size());
+            return index;
+        }
+    }
+
+    /**
+     * @return the class hierarchy of a JAR, built once and shared with other commands
+     */
+    public static HierarchyIndex<ClassEntry> getHierarchyIndex(CommandContext context, Path jar) throws Exception {
+        JarIndex index = getJarIndex(context, jar);
+        try (Metrics.Phase phase = context.metrics().start("hierarchyIndex")) {
+            HierarchyIndex<ClassEntry> hierarchy = context.get("hierarchyIndex", Collections.singletonList(jar), () -> createHierarchyIndex(index));
+            phase.setItems(hierarchy.size());
+            return hierarchy;
+        }
+    }
+
+    public static HierarchyIndex<ClassEntry> createHierarchyIndex(JarIndex index) {
+        InheritanceIndex inheritanceIndex = index.getInheritanceIndex();
+        return HierarchyIndex.build(index.getEntryIndex().getClasses(), inheritanceIndex::getParents);
+    }
+
+    /**
+     * @return the Enigma mappings in a file or directory, whose files are read in parallel; shared with other commands, so copy before modifying
+     */
+    public static EntryTree<EntryMapping> getMappings(CommandContext context, Path path) throws Exception {
+        try (Metrics.Phase phase = context.metrics().start("mappingRead")) {
+            return context.get("mappings", Collections.singletonList(path), () -> {
+                if (Files.isDirectory(path)) {
+                    return ParallelMappingReader.read(path, Runtime.getRuntime().availableProcessors(), new MetricsProgressListener(phase));
+                }
+                return MappingFormat.ENIGMA_FILE.read(path, new MetricsProgressListener(phase));
+            });
+        }
+    }
+
+    public static EntryTree<EntryMapping> copy(EntryTree<EntryMapping> mappings) {
+        EntryTree<EntryMapping> copy = new HashEntryTree<>();
+        for (EntryTreeNode<EntryMapping> node : mappings) {
+            if (node.getValue() != null) {
+                copy.insert(node.getEntry(), node.getValue());
+            }
+        }
+        return copy;
     }
 }
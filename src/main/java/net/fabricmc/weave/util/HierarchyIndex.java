@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The transitive closure of a class hierarchy, computed once so that ancestor, descendant
+ * and subtype queries don't walk the hierarchy again. Immutable, so it can be shared
+ * between threads.
+ *
+ * Every class gets a dense id, and a class always comes after its ancestors. The ancestors
+ * and descendants of each class are kept as sorted ids packed into one array per direction.
+ * Real hierarchies are shallow and most classes have no subclasses, so this is far smaller
+ * than a bitset per class. {@link #isSubtypeOf} rejects a later id right away and otherwise
+ * does a binary search over the few ancestors of the class. A cyclic hierarchy, which only
+ * a broken JAR can have, is cut at the edge that closes the cycle.
+ */
+public final class HierarchyIndex<T> {
+    private final List<T> classes;
+    private final Map<T, Integer> ids;
+    private final int[] ancestorStarts;
+    private final int[] ancestors;
+    private final int[] descendantStarts;
+    private final int[] descendants;
+
+    private HierarchyIndex(List<T> classes, Map<T, Integer> ids, List<int[]> ancestorIds) {
+        int count = classes.size();
+        this.classes = classes;
+        this.ids = ids;
+        this.ancestorStarts = new int[count + 1];
+        this.descendantStarts = new int[count + 1];
+
+        int total = 0;
+        int[] descendantCounts = new int[count];
+        for (int id = 0; id < count; id++) {
+            ancestorStarts[id] = total;
+            total += ancestorIds.get(id).length;
+            for (int ancestor : ancestorIds.get(id)) {
+                descendantCounts[ancestor]++;
+            }
+        }
+        ancestorStarts[count] = total;
+
+        this.ancestors = new int[total];
+        this.descendants = new int[total];
+        for (int id = 0; id < count; id++) {
+            descendantStarts[id + 1] = descendantStarts[id] + descendantCounts[id];
+        }
+
+        // descendants are added in id order, so each range ends up sorted
+        int[] next = Arrays.copyOf(descendantStarts, count);
+        for (int id = 0; id < count; id++) {
+            int[] classAncestors = ancestorIds.get(id);
+            System.arraycopy(classAncestors, 0, ancestors, ancestorStarts[id], classAncestors.length);
+            for (int ancestor : classAncestors) {
+                descendants[next[ancestor]++] = id;
+            }
+        }
+    }
+
+    /**
+     * @param classes the classes to index; their ancestors are indexed too
+     * @param parents the direct superclass and interfaces of a class, empty if unknown
+     */
+    public static <T> HierarchyIndex<T> build(Collection<? extends T> classes, Function<? super T, ? extends Collection<? extends T>> parents) {
+        Builder<T> builder = new Builder<>(parents);
+        for (T type : classes) {
+            builder.visit(type);
+        }
+        return new HierarchyIndex<>(builder.classes, builder.ids, builder.ancestorIds);
+    }
+
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     * @return the id of a class, or -1 if it isn't indexed
+     */
+    public int getId(T type) {
+        Integer id = ids.get(type);
+        return id != null ? id : -1;
+    }
+
+    public T get(int id) {
+        return classes.get(id);
+    }
+
+    /**
+     * @return whether {@code type} is {@code supertype} or extends or implements it, directly or not
+     */
+    public boolean isSubtypeOf(T type, T supertype) {
+        int id = getId(type);
+        int superId = getId(supertype);
+        return id >= 0 && superId >= 0 && isSubtypeOfId(id, superId);
+    }
+
+    /**
+     * Like {@link #isSubtypeOf(Object, Object)}, for ids.
+     */
+    public boolean isSubtypeOfId(int id, int superId) {
+        return id == superId || superId < id && Arrays.binarySearch(ancestors, ancestorStarts[id], ancestorStarts[id + 1], superId) >= 0;
+    }
+
+    /**
+     * @return every superclass and interface of a class, direct or not, in id order
+     */
+    public List<T> getAncestors(T type) {
+        int id = getId(type);
+        return id >= 0 ? new ClassList(ancestors, ancestorStarts[id], ancestorStarts[id + 1]) : Collections.emptyList();
+    }
+
+    /**
+     * @return every class extending or implementing a class, directly or not, in id order
+     */
+    public List<T> getDescendants(T type) {
+        int id = getId(type);
+        return id >= 0 ? new ClassList(descendants, descendantStarts[id], descendantStarts[id + 1]) : Collections.emptyList();
+    }
+
+    private final class ClassList extends AbstractList<T> {
+        private final int[] ids;
+        private final int start;
+        private final int end;
+
+        private ClassList(int[] ids, int start, int end) {
+            this.ids = ids;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return classes.get(ids[start + index]);
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+
+    private static final class Builder<T> {
+        private final Function<? super T, ? extends Collection<? extends T>> parents;
+        private final List<T> classes = new ArrayList<>();
+        private final Map<T, Integer> ids = new HashMap<>();
+        private final List<int[]> ancestorIds = new ArrayList<>();
+        private final Set<T> visiting = new HashSet<>();
+
+        // marks[id] == stamp if id was already added to the ancestors being collected
+        private int[] marks = new int[0];
+        private int stamp;
+
+        private Builder(Function<? super T, ? extends Collection<? extends T>> parents) {
+            this.parents = parents;
+        }
+
+        /**
+         * Indexes a class after its ancestors.
+         *
+         * @return its id, or -1 if it is one of the classes being visited
+         */
+        private int visit(T type) {
+            Integer id = ids.get(type);
+            if (id != null) {
+                return id;
+            } else if (!visiting.add(type)) {
+                return -1;
+            }
+
+            List<Integer> parentIds = new ArrayList<>();
+            for (T parent : parents.apply(type)) {
+                int parentId = visit(parent);
+                if (parentId >= 0) {
+                    parentIds.add(parentId);
+                }
+            }
+            visiting.remove(type);
+
+            int newId = classes.size();
+            classes.add(type);
+            ids.put(type, newId);
+            ancestorIds.add(collectAncestors(parentIds));
+            return newId;
+        }
+
+        private int[] collectAncestors(List<Integer> parentIds) {
+            if (marks.length < classes.size()) {
+                marks = Arrays.copyOf(marks, Math.max(classes.size(), marks.length * 2));
+            }
+            stamp++;
+
+            int[] result = new int[16];
+            int size = 0;
+            for (int parentId : parentIds) {
+                int[] inherited = ancestorIds.get(parentId);
+                if (result.length < size + inherited.length + 1) {
+                    result = Arrays.copyOf(result, Math.max(result.length * 2, size + inherited.length + 1));
+                }
+
+                if (marks[parentId] != stamp) {
+                    marks[parentId] = stamp;
+                    result[size++] = parentId;
+                }
+                for (int ancestor : inherited) {
+                    if (marks[ancestor] != stamp) {
+                        marks[ancestor] = stamp;
+                        result[size++] = ancestor;
+                    }
+                }
+            }
+
+            int[] sorted = Arrays.copyOf(result, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.translation.representation.entry.ClassDefEntry;
+import cuchaz.enigma.translation.representation.entry.FieldDefEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * On-disk cache of the data Enigma indexes from a JAR, keyed by the JAR's SHA-256.
+ *
+ * By default the cache is stored next to the JAR as {@code <jar>.weave-index}. The
+ * {@code weave.indexCache} system property can point it at a shared directory instead,
+ * where entries are named after the JAR hash, or disable it with {@code off}.
+ */
+public final class JarIndexCache {
+    private static final int MAGIC = 0x57564958; // WVIX
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".weave-index";
+
+    private JarIndexCache() {
+
+    }
+
+    /**
+     * @param hash the SHA-256 of the JAR
+     * @param log where to report a cache that can't be read or written
+     */
+    public static JarIndex load(Path jar, String hash, PrintStream log, ProgressListener progress) throws IOException {
+        if ("off".equals(System.getProperty("weave.indexCache"))) {
+            return index(JarScan.scan(jar), progress);
+        }
+
+        Path cacheFile = getCacheFile(jar, hash);
+
+        JarScan scan = read(cacheFile, hash, log);
+        if (scan == null) {
+            scan = JarScan.scan(jar);
+            write(cacheFile, hash, scan, log);
+        }
+
+        return index(scan, progress);
+    }
+
+    public static JarIndex index(JarScan scan, ProgressListener progress) {
+        JarIndex index = JarIndex.empty();
+        List<MethodDefEntry> methods = new ArrayList<>();
+
+        progress.init(4, "Indexing classes");
+
+        progress.step(1, "Entries...");
+        for (JarScan.ClassInfo info : scan.getClasses()) {
+            ClassDefEntry classEntry = ClassDefEntry.parse(info.access, info.name, info.signature, info.superName, info.interfaces);
+            index.indexClass(classEntry);
+
+            for (JarScan.MemberInfo field : info.fields) {
+                index.indexField(FieldDefEntry.parse(classEntry, field.access, field.name, field.desc, field.signature));
+            }
+
+            for (JarScan.MemberInfo method : info.methods) {
+                MethodDefEntry methodEntry = MethodDefEntry.parse(classEntry, method.access, method.name, method.desc, method.signature);
+                index.indexMethod(methodEntry);
+                methods.add(methodEntry);
+            }
+        }
+
+        progress.step(2, "Entry references...");
+        int i = 0;
+        for (JarScan.ClassInfo info : scan.getClasses()) {
+            for (JarScan.MemberInfo method : info.methods) {
+                MethodDefEntry caller = methods.get(i++);
+
+                for (JarScan.MemberRef ref : method.references) {
+                    if (ref.type == JarScan.REF_FIELD) {
+                        index.indexFieldReference(caller, FieldEntry.parse(ref.owner, ref.name, ref.desc));
+                    } else {
+                        index.indexMethodReference(caller, MethodEntry.parse(ref.owner, ref.name, ref.desc));
+                    }
+                }
+            }
+        }
+
+        progress.step(3, "Bridge methods...");
+        index.getBridgeMethodIndex().findBridgeMethods();
+
+        progress.step(4, "Processing...");
+        index.processIndex(index);
+
+        return index;
+    }
+
+    private static Path getCacheFile(Path jar, String hash) {
+        String dir = System.getProperty("weave.indexCache");
+        if (dir == null || dir.isEmpty()) {
+            return jar.resolveSibling(jar.getFileName() + SUFFIX);
+        } else {
+            return Paths.get(dir).resolve(hash + SUFFIX);
+        }
+    }
+
+    private static JarScan read(Path cacheFile, String hash, PrintStream log) {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(hash)) {
+                return null;
+            }
+
+            JarScan scan = JarScan.read(new DataInputStream(new CheckedInputStream(in, crc)));
+            if (in.readLong() != crc.getValue()) {
+                log.println("JAR index cache " + cacheFile + " is corrupt, rebuilding");
+                return null;
+            }
+
+            return scan;
+        } catch (IOException e) {
+            log.println("JAR index cache " + cacheFile + " is corrupt, rebuilding: " + e);
+            return null;
+        }
+    }
+
+    private static void write(Path cacheFile, String hash, JarScan scan, PrintStream log) {
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+
+            CRC32 crc = new CRC32();
+            try (AtomicFileOutput output = new AtomicFileOutput(cacheFile); DataOutputStream out = new DataOutputStream(output.getStream())) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(hash);
+
+                DataOutputStream checked = new DataOutputStream(new CheckedOutputStream(out, crc));
+                scan.write(checked);
+                checked.flush();
+                out.writeLong(crc.getValue());
+                output.commit();
+            }
+        } catch (IOException e) {
+            log.println("Could not write JAR index cache " + cacheFile + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Remaps the classes of a JAR with ASM, in parallel, and copies every other entry
+ * without recompressing it.
+ *
+ * Member names are looked up in the class they are referenced through, then in its
+ * superclasses and interfaces from the JAR, so references through subclasses and
+ * overrides of mapped methods are renamed too. Mapped class names lose their "none/"
+ * prefix. Entries are written in the order of the input, so the output doesn't depend
+ * on thread scheduling. Signature files are dropped, since remapping invalidates them.
+ */
+public final class JarRemapper {
+    private static final Pattern SIGNATURE_FILE = Pattern.compile("META-INF/[^/]+\\.(SF|DSA|RSA|EC)");
+
+    private final NameMapper mapper;
+    private final Map<String, JarScan.ClassInfo> classes = new HashMap<>();
+    private final Remapper remapper = new HierarchyRemapper();
+
+    /**
+     * @param scan the classes of the JAR to remap; declarations are enough
+     */
+    public JarRemapper(NameMapper mapper, JarScan scan) {
+        this.mapper = mapper;
+        for (JarScan.ClassInfo info : scan.getClasses()) {
+            classes.put(info.name, info);
+        }
+    }
+
+    public Remapper getRemapper() {
+        return remapper;
+    }
+
+    /**
+     * @return the number of classes remapped
+     */
+    public int remap(Path input, Path output) throws IOException {
+        RawZipFile zip = RawZipFile.open(input);
+        List<RawZipFile.Entry> entries = zip.getEntries();
+
+        List<RemappedClass> remapped;
+        try {
+            remapped = entries.parallelStream().map(entry -> {
+                try {
+                    return isClass(entry) ? remapClass(entry.getContent()) : null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        int count = 0;
+        try (RawZipWriter writer = new RawZipWriter(output)) {
+            for (int i = 0; i < entries.size(); i++) {
+                RawZipFile.Entry entry = entries.get(i);
+
+                if (remapped.get(i) != null) {
+                    writer.write(remapped.get(i).name + ".class", entry.getDosTime(), remapped.get(i).data);
+                    count++;
+                } else if (!SIGNATURE_FILE.matcher(entry.getName()).matches()) {
+                    writer.copy(entry.getName(), entry);
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private static boolean isClass(RawZipFile.Entry entry) {
+        return !entry.isDirectory() && entry.getName().endsWith(".class");
+    }
+
+    private RemappedClass remapClass(byte[] content) {
+        ClassReader reader = new ClassReader(content);
+        ClassWriter writer = new ClassWriter(0);
+        reader.accept(new ClassRemapper(writer, remapper), 0);
+
+        return new RemappedClass(remapper.map(reader.getClassName()), RawZipWriter.compress(writer.toByteArray()));
+    }
+
+    /**
+     * Visits the class and then its superclass and interfaces from the JAR, breadth-first,
+     * until {@code visitor} returns a result.
+     */
+    private <T> T findInHierarchy(String owner, BiFunction<String, JarScan.ClassInfo, T> visitor) {
+        Deque<String> queue = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        queue.add(owner);
+
+        while (!queue.isEmpty()) {
+            String name = queue.poll();
+            if (!visited.add(name)) {
+                continue;
+            }
+
+            JarScan.ClassInfo info = classes.get(name);
+            T result = visitor.apply(name, info);
+            if (result != null) {
+                return result;
+            }
+
+            if (info != null) {
+                if (info.superName != null) {
+                    queue.add(info.superName);
+                }
+                for (String itf : info.interfaces) {
+                    queue.add(itf);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static JarScan.MemberInfo findMember(List<JarScan.MemberInfo> members, String name, String desc) {
+        for (JarScan.MemberInfo member : members) {
+            if (member.name.equals(name) && (desc == null || member.desc.equals(desc))) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    private static final class RemappedClass {
+        private final String name;
+        private final RawZipWriter.Data data;
+
+        private RemappedClass(String name, RawZipWriter.Data data) {
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private class HierarchyRemapper extends Remapper {
+        private final Map<String, String> classNames = new ConcurrentHashMap<>();
+        private final Map<String, String> memberNames = new ConcurrentHashMap<>();
+
+        @Override
+        public String map(String name) {
+            return classNames.computeIfAbsent(name, n -> {
+                String mapped = mapper.mapClass(n);
+                return mapped != null ? Utils.removeNone(mapped) : n;
+            });
+        }
+
+        @Override
+        public String mapFieldName(String owner, String name, String desc) {
+            return memberNames.computeIfAbsent(owner + '.' + name + ':' + desc, k -> {
+                // fields resolve to the first class declaring them
+                String mapped = findInHierarchy(owner, (className, info) -> {
+                    if (info == null || findMember(info.fields, name, desc) == null) {
+                        return null;
+                    }
+
+                    String result = mapper.mapField(className, name, desc);
+                    return result != null ? result : name;
+                });
+
+                if (mapped == null) {
+                    mapped = mapper.mapField(owner, name, desc);
+                }
+                return mapped != null ? mapped : name;
+            });
+        }
+
+        @Override
+        public String mapMethodName(String owner, String name, String desc) {
+            if (name.startsWith("<")) {
+                return name;
+            }
+
+            return memberNames.computeIfAbsent(owner + '.' + name + desc, k -> {
+                String mapped = findInHierarchy(owner, (className, info) -> {
+                    // private methods aren't inherited
+                    if (!className.equals(owner) && info != null) {
+                        JarScan.MemberInfo method = findMember(info.methods, name, desc);
+                        if (method != null && (method.access & Opcodes.ACC_PRIVATE) != 0) {
+                            return null;
+                        }
+                    }
+
+                    return mapper.mapMethod(className, name, desc);
+                });
+
+                return mapped != null ? mapped : name;
+            });
+        }
+
+        /**
+         * Lambdas and method references name the method they implement but not its
+         * descriptor, so the first method of that name in the functional interface is used.
+         */
+        @Override
+        public String mapInvokeDynamicMethodName(String name, String desc) {
+            Type type = Type.getReturnType(desc);
+            if (type.getSort() != Type.OBJECT) {
+                return name;
+            }
+
+            String owner = type.getInternalName();
+            JarScan.MemberInfo method = findInHierarchy(owner, (className, info) -> info != null ? findMember(info.methods, name, null) : null);
+            return method != null ? mapMethodName(owner, name, method.desc) : name;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+/**
+ * Raw declarations and member references of every class in a JAR, as seen by ASM.
+ *
+ * This is the same information Enigma's indexers extract from the class files,
+ * kept in a plain form so it can be serialized and replayed without re-parsing the JAR.
+ */
+public final class JarScan {
+    public static final byte REF_FIELD = 0;
+    public static final byte REF_METHOD = 1;
+
+    private final List<ClassInfo> classes;
+
+    public JarScan(List<ClassInfo> classes) {
+        this.classes = classes;
+    }
+
+    public List<ClassInfo> getClasses() {
+        return classes;
+    }
+
+    public static JarScan scan(Path jar) throws IOException {
+        return scan(jar, false);
+    }
+
+    /**
+     * Reads every class of the JAR in parallel.
+     *
+     * @param declarationsOnly skip the bodies of all but synthetic methods, leaving class, field and method
+     *                         declarations and the references Enigma needs to find bridge methods
+     */
+    public static JarScan scan(Path jar, boolean declarationsOnly) throws IOException {
+        int flags = ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+        try (JarFile file = new JarFile(jar.toFile())) {
+            List<JarEntry> entries = new ArrayList<>();
+            for (JarEntry entry : Collections.list(file.entries())) {
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    entries.add(entry);
+                }
+            }
+
+            List<ClassInfo> classes = entries.parallelStream().map(entry -> {
+                try (InputStream stream = file.getInputStream(entry)) {
+                    ScanVisitor visitor = new ScanVisitor(declarationsOnly);
+                    new ClassReader(stream).accept(visitor, flags);
+                    return visitor.info;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sorted(Comparator.comparing(c -> c.name)).collect(Collectors.toList());
+
+            return new JarScan(classes);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public void write(DataOutput out) throws IOException {
+        StringPool pool = new StringPool();
+        out.writeInt(classes.size());
+
+        for (ClassInfo info : classes) {
+            out.writeInt(info.access);
+            pool.write(out, info.name);
+            pool.write(out, info.signature);
+            pool.write(out, info.superName);
+            out.writeInt(info.interfaces.length);
+            for (String itf : info.interfaces) {
+                pool.write(out, itf);
+            }
+
+            writeMembers(out, pool, info.fields);
+            writeMembers(out, pool, info.methods);
+        }
+    }
+
+    private static void writeMembers(DataOutput out, StringPool pool, List<MemberInfo> members) throws IOException {
+        out.writeInt(members.size());
+
+        for (MemberInfo member : members) {
+            out.writeInt(member.access);
+            pool.write(out, member.name);
+            pool.write(out, member.desc);
+            pool.write(out, member.signature);
+
+            out.writeInt(member.references.size());
+            for (MemberRef ref : member.references) {
+                out.writeByte(ref.type);
+                pool.write(out, ref.owner);
+                pool.write(out, ref.name);
+                pool.write(out, ref.desc);
+            }
+        }
+    }
+
+    public static JarScan read(DataInput in) throws IOException {
+        StringPool pool = new StringPool();
+        int classCount = readCount(in);
+        List<ClassInfo> classes = new ArrayList<>(classCount);
+
+        for (int i = 0; i < classCount; i++) {
+            int access = in.readInt();
+            String name = pool.read(in);
+            String signature = pool.read(in);
+            String superName = pool.read(in);
+            String[] interfaces = new String[readCount(in)];
+            for (int j = 0; j < interfaces.length; j++) {
+                interfaces[j] = pool.read(in);
+            }
+
+            ClassInfo info = new ClassInfo(access, name, signature, superName, interfaces);
+            readMembers(in, pool, info.fields);
+            readMembers(in, pool, info.methods);
+            classes.add(info);
+        }
+
+        return new JarScan(classes);
+    }
+
+    private static void readMembers(DataInput in, StringPool pool, List<MemberInfo> members) throws IOException {
+        int count = readCount(in);
+
+        for (int i = 0; i < count; i++) {
+            MemberInfo member = new MemberInfo(in.readInt(), pool.read(in), pool.read(in), pool.read(in));
+
+            int refCount = readCount(in);
+            for (int j = 0; j < refCount; j++) {
+                byte type = in.readByte();
+                if (type != REF_FIELD && type != REF_METHOD) {
+                    throw new IOException("Invalid reference type " + type);
+                }
+                member.references.add(new MemberRef(type, pool.read(in), pool.read(in), pool.read(in)));
+            }
+
+            members.add(member);
+        }
+    }
+
+    private static int readCount(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid element count " + count);
+        }
+        return count;
+    }
+
+    public static final class ClassInfo {
+        public final int access;
+        public final String name;
+        public final String signature;
+        public final String superName;
+        public final String[] interfaces;
+        public final List<MemberInfo> fields = new ArrayList<>();
+        public final List<MemberInfo> methods = new ArrayList<>();
+
+        public ClassInfo(int access, String name, String signature, String superName, String[] interfaces) {
+            this.access = access;
+            this.name = name;
+            this.signature = signature;
+            this.superName = superName;
+            this.interfaces = interfaces != null ? interfaces : new String[0];
+        }
+    }
+
+    public static final class MemberInfo {
+        public final int access;
+        public final String name;
+        public final String desc;
+        public final String signature;
+        public final Set<MemberRef> references = new LinkedHashSet<>();
+
+        public MemberInfo(int access, String name, String desc, String signature) {
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+            this.signature = signature;
+        }
+    }
+
+    public static final class MemberRef {
+        public final byte type;
+        public final String owner;
+        public final String name;
+        public final String desc;
+
+        public MemberRef(byte type, String owner, String name, String desc) {
+            this.type = type;
+            this.owner = owner;
+            this.name = name;
+            this.desc = desc;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MemberRef)) {
+                return false;
+            }
+            MemberRef other = (MemberRef) o;
+            return type == other.type && owner.equals(other.owner) && name.equals(other.name) && desc.equals(other.desc);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((type * 31 + owner.hashCode()) * 31 + name.hashCode()) * 31 + desc.hashCode();
+        }
+    }
+
+    private static class ScanVisitor extends ClassVisitor {
+        private final boolean declarationsOnly;
+        private ClassInfo info;
+
+        private ScanVisitor(boolean declarationsOnly) {
+            super(Opcodes.ASM7);
+            this.declarationsOnly = declarationsOnly;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            info = new ClassInfo(access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            info.fields.add(new MemberInfo(access, name, descriptor, signature));
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            MemberInfo method = new MemberInfo(access, name, descriptor, signature);
+            info.methods.add(method);
+            // bridge methods are found by what synthetic methods call, so their bodies are always read;
+            // ClassReader skips the body of any method without a visitor
+            if (declarationsOnly && (access & Opcodes.ACC_SYNTHETIC) == 0) {
+                return null;
+            }
+
+            return new ReferenceVisitor(method.references);
+        }
+    }
+
+    private static class ReferenceVisitor extends MethodVisitor {
+        private final Set<MemberRef> references;
+
+        private ReferenceVisitor(Set<MemberRef> references) {
+            super(Opcodes.ASM7);
+            this.references = references;
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            references.add(new MemberRef(REF_FIELD, owner, name, descriptor));
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            references.add(new MemberRef(REF_METHOD, owner, name, descriptor));
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+            for (Object arg : bootstrapMethodArguments) {
+                if (!(arg instanceof Handle)) {
+                    continue;
+                }
+
+                Handle handle = (Handle) arg;
+                switch (handle.getTag()) {
+                    case Opcodes.H_GETFIELD:
+                    case Opcodes.H_GETSTATIC:
+                    case Opcodes.H_PUTFIELD:
+                    case Opcodes.H_PUTSTATIC:
+                        references.add(new MemberRef(REF_FIELD, handle.getOwner(), handle.getName(), handle.getDesc()));
+                        break;
+                    case Opcodes.H_INVOKEINTERFACE:
+                    case Opcodes.H_INVOKESPECIAL:
+                    case Opcodes.H_INVOKESTATIC:
+                    case Opcodes.H_INVOKEVIRTUAL:
+                    case Opcodes.H_NEWINVOKESPECIAL:
+                        references.add(new MemberRef(REF_METHOD, handle.getOwner(), handle.getName(), handle.getDesc()));
+                        break;
+                }
+            }
+        }
+    }
+
+    private static class StringPool {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        private void write(DataOutput out, String s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+                return;
+            }
+
+            Integer id = ids.get(s);
+            if (id != null) {
+                out.writeInt(id);
+            } else {
+                out.writeInt(strings.size());
+                out.writeUTF(s);
+                ids.put(s, strings.size());
+                strings.add(s);
+            }
+        }
+
+        private String read(DataInput in) throws IOException {
+            int id = in.readInt();
+            if (id == -1) {
+                return null;
+            } else if (id >= 0 && id < strings.size()) {
+                return strings.get(id);
+            } else if (id == strings.size()) {
+                String s = in.readUTF();
+                strings.add(s);
+                return s;
+            } else {
+                throw new IOException("Invalid string id " + id);
+            }
+        }
+    }
+}
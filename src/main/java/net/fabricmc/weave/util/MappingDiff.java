@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Compares two sets of mappings one top-level class at a time, so only the mappings of
+ * the current class are held in memory besides the inputs themselves.
+ *
+ * Every renamed class, field and method is a row whose key is its Tiny v1 line without
+ * the target name ({@code CLASS\ta}, {@code FIELD\ta\tI\tb}...), with "none/" prefixes
+ * removed, and whose value is the target name. Classes compare by their full target
+ * name, so inner classes of renamed classes are rows too. Top-level classes are visited
+ * in order of their names and rows in order of their keys, so the differences come out
+ * in the same order whatever the inputs' formats are.
+ */
+public final class MappingDiff {
+    private MappingDiff() {
+    }
+
+    public interface Source {
+        /**
+         * @return the names of the top-level classes with rows, without "none/" prefixes
+         */
+        NavigableSet<String> getTopLevelClasses();
+
+        /**
+         * @return the rows of the top-level class and its inner classes
+         */
+        SortedMap<String, String> getRows(String topLevelClass);
+    }
+
+    public interface Listener {
+        void added(String key, String target);
+
+        void removed(String key, String target);
+
+        void renamed(String key, String oldTarget, String newTarget);
+    }
+
+    /**
+     * Reports the rows of {@code newer} that {@code older} doesn't have, the rows it lost
+     * and the rows whose target changed.
+     */
+    public static void diff(Source older, Source newer, Listener listener) {
+        Iterator<String> olderClasses = older.getTopLevelClasses().iterator();
+        Iterator<String> newerClasses = newer.getTopLevelClasses().iterator();
+        String olderClass = next(olderClasses);
+        String newerClass = next(newerClasses);
+
+        while (olderClass != null || newerClass != null) {
+            int cmp = olderClass == null ? 1 : newerClass == null ? -1 : olderClass.compareTo(newerClass);
+
+            SortedMap<String, String> olderRows = cmp <= 0 ? older.getRows(olderClass) : new TreeMap<>();
+            SortedMap<String, String> newerRows = cmp >= 0 ? newer.getRows(newerClass) : new TreeMap<>();
+            diffRows(olderRows, newerRows, listener);
+
+            if (cmp <= 0) {
+                olderClass = next(olderClasses);
+            }
+            if (cmp >= 0) {
+                newerClass = next(newerClasses);
+            }
+        }
+    }
+
+    private static void diffRows(SortedMap<String, String> older, SortedMap<String, String> newer, Listener listener) {
+        Iterator<Map.Entry<String, String>> olderRows = older.entrySet().iterator();
+        Iterator<Map.Entry<String, String>> newerRows = newer.entrySet().iterator();
+        Map.Entry<String, String> olderRow = next(olderRows);
+        Map.Entry<String, String> newerRow = next(newerRows);
+
+        while (olderRow != null || newerRow != null) {
+            int cmp = olderRow == null ? 1 : newerRow == null ? -1 : olderRow.getKey().compareTo(newerRow.getKey());
+
+            if (cmp < 0) {
+                listener.removed(olderRow.getKey(), olderRow.getValue());
+            } else if (cmp > 0) {
+                listener.added(newerRow.getKey(), newerRow.getValue());
+            } else if (!olderRow.getValue().equals(newerRow.getValue())) {
+                listener.renamed(olderRow.getKey(), olderRow.getValue(), newerRow.getValue());
+            }
+
+            if (cmp <= 0) {
+                olderRow = next(olderRows);
+            }
+            if (cmp >= 0) {
+                newerRow = next(newerRows);
+            }
+        }
+    }
+
+    private static <T> T next(Iterator<T> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * @return the top-level class of a class name without "none/" prefix
+     */
+    public static String getTopLevelClass(String name) {
+        int dollar = name.indexOf('$');
+        return dollar >= 0 ? name.substring(0, dollar) : name;
+    }
+
+    /**
+     * @return the rows of a Tiny file, mapped from namespace {@code from} to {@code to}
+     */
+    public static Source of(TinyMappings mappings, int from, int to) {
+        TreeMap<String, List<Integer>> classes = new TreeMap<>();
+        for (int i = 0; i < mappings.getClassCount(); i++) {
+            String name = mappings.getClassName(i, from);
+            if (!name.isEmpty()) {
+                classes.computeIfAbsent(getTopLevelClass(Utils.removeNone(name)), k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        return new Source() {
+            @Override
+            public NavigableSet<String> getTopLevelClasses() {
+                return Collections.unmodifiableNavigableSet(classes.navigableKeySet());
+            }
+
+            @Override
+            public SortedMap<String, String> getRows(String topLevelClass) {
+                SortedMap<String, String> rows = new TreeMap<>();
+
+                for (int i : classes.getOrDefault(topLevelClass, Collections.emptyList())) {
+                    String name = mappings.getClassName(i, from);
+                    String target = mappings.getClassName(i, to);
+                    if (!target.isEmpty() && !name.equals(target)) {
+                        rows.put("CLASS\t" + Utils.removeNone(name), Utils.removeNone(target));
+                    }
+
+                    addMembers(rows, "FIELD\t", mappings.getFields(i));
+                    addMembers(rows, "METHOD\t", mappings.getMethods(i));
+                }
+
+                return rows;
+            }
+
+            private void addMembers(SortedMap<String, String> rows, String type, List<TinyMappings.Member> members) {
+                for (TinyMappings.Member member : members) {
+                    String name = member.getName(from);
+                    String target = member.getName(to);
+                    if (!name.isEmpty() && !target.isEmpty() && !name.equals(target)) {
+                        String key = type + Utils.removeNone(member.getOwner(from)) + '\t' + Utils.removeNoneFromDesc(member.getDesc(from)) + '\t' + name;
+                        rows.put(key, target);
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+/**
+ * Names of one set of mappings, looked up by the names they are mapped from. Members
+ * are only looked up in the class given; inheritance is resolved by the caller.
+ * Implementations must be safe to use from several threads.
+ */
+public interface NameMapper {
+    /**
+     * @return the mapped internal name, or null if the class isn't mapped
+     */
+    String mapClass(String name);
+
+    /**
+     * @return the mapped name, or null if the field isn't mapped
+     */
+    String mapField(String owner, String name, String desc);
+
+    /**
+     * @return the mapped name, or null if the method isn't mapped
+     */
+    String mapMethod(String owner, String name, String desc);
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges two orderings of mostly the same elements into one ordering that keeps the
+ * order of both, in O((n + m) log(n + m)).
+ *
+ * The n-th occurrence of an element in one list is matched with its n-th occurrence in
+ * the other. The longest run of matches that is in the same order in both lists is kept
+ * as anchors; between two anchors, the elements of the first list come first, then the
+ * elements only found in the second list, then the anchor. Matched elements that are
+ * not anchors, because the lists order them differently, are emitted once, where the
+ * first list puts them.
+ *
+ * If both lists agree on the order of their common elements, the result is the same as
+ * the one of the former {@code Utils.mergePreserveOrder}.
+ *
+ * The anchors are chosen over both lists as a whole, so both are held in memory; there is
+ * no streaming variant, as one working on a window at a time could pick other anchors.
+ */
+public final class OrderedMerge {
+    private static final byte EXCLUSIVE = 0;
+    private static final byte ANCHOR = 1;
+    private static final byte MOVED = 2;
+
+    private OrderedMerge() {
+    }
+
+    public static <T> List<T> merge(List<T> first, List<T> second) {
+        Map<T, Integer> ids = new HashMap<>();
+        List<T> values = new ArrayList<>();
+        int[] a = intern(first, ids, values);
+        int[] b = intern(second, ids, values);
+
+        // positions of every id in b, grouped by id
+        int[] start = new int[values.size() + 1];
+        for (int id : b) {
+            start[id + 1]++;
+        }
+        for (int id = 0; id < values.size(); id++) {
+            start[id + 1] += start[id];
+        }
+        int[] positions = new int[b.length];
+        int[] fill = Arrays.copyOf(start, values.size());
+        for (int j = 0; j < b.length; j++) {
+            positions[fill[b[j]]++] = j;
+        }
+
+        // matchA[i] is the position in b matched with a[i], or -1
+        int[] seen = new int[values.size()];
+        int[] matchA = new int[a.length];
+        for (int i = 0; i < a.length; i++) {
+            int id = a[i];
+            int occurrence = seen[id]++;
+            matchA[i] = start[id] + occurrence < start[id + 1] ? positions[start[id] + occurrence] : -1;
+        }
+
+        byte[] stateA = new byte[a.length];
+        byte[] stateB = new byte[b.length];
+        for (int i = 0; i < a.length; i++) {
+            if (matchA[i] >= 0) {
+                stateA[i] = MOVED;
+                stateB[matchA[i]] = MOVED;
+            }
+        }
+        for (int i : longestIncreasing(matchA)) {
+            stateA[i] = ANCHOR;
+            stateB[matchA[i]] = ANCHOR;
+        }
+
+        List<T> out = new ArrayList<>(Math.max(a.length, b.length));
+        int j = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (stateA[i] == ANCHOR) {
+                for (; j < matchA[i]; j++) {
+                    if (stateB[j] == EXCLUSIVE) {
+                        out.add(values.get(b[j]));
+                    }
+                }
+                j++;
+            }
+
+            out.add(values.get(a[i]));
+        }
+
+        for (; j < b.length; j++) {
+            if (stateB[j] == EXCLUSIVE) {
+                out.add(values.get(b[j]));
+            }
+        }
+
+        return out;
+    }
+
+    private static <T> int[] intern(List<T> elements, Map<T, Integer> ids, List<T> values) {
+        int[] result = new int[elements.size()];
+        int size = 0;
+
+        for (T element : elements) {
+            Integer id = ids.get(element);
+            if (id == null) {
+                id = values.size();
+                ids.put(element, id);
+                values.add(element);
+            }
+            result[size++] = id;
+        }
+
+        return result;
+    }
+
+    /**
+     * Patience sorting over the non-negative values.
+     *
+     * @return the indices of a longest strictly increasing subsequence, in order
+     */
+    private static int[] longestIncreasing(int[] values) {
+        int[] tails = new int[values.length];
+        int[] previous = new int[values.length];
+        int length = 0;
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] < 0) {
+                continue;
+            }
+
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tails[mid]] < values[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        int[] result = new int[length];
+        for (int k = length - 1, i = length > 0 ? tails[length - 1] : -1; k >= 0; k--, i = previous[i]) {
+            result[k] = i;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import com.google.common.base.Throwables;
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.serde.MappingFormat;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.EntryTreeNode;
+import cuchaz.enigma.translation.mapping.tree.HashEntryTree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads an Enigma mapping directory like {@link MappingFormat#ENIGMA_DIRECTORY}, but
+ * parses the files on a pool of threads. Each file is read into its own tree, and the
+ * trees are merged in order of their paths, so the result doesn't depend on which file
+ * is parsed first; a mapping present in several files is taken from the last one.
+ */
+public final class ParallelMappingReader {
+    private ParallelMappingReader() {
+    }
+
+    public static EntryTree<EntryMapping> read(Path dir, int threads, ProgressListener progress) throws Exception {
+        List<Path> files = listMappingFiles(dir);
+        EntryTree<EntryMapping> mappings = new HashEntryTree<>();
+        progress.init(files.size(), "Reading mappings");
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+        try {
+            List<Future<EntryTree<EntryMapping>>> futures = new ArrayList<>(files.size());
+            for (Path file : files) {
+                futures.add(executor.submit(() -> MappingFormat.ENIGMA_FILE.read(file, ProgressListener.none())));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                EntryTree<EntryMapping> fileMappings;
+                try {
+                    fileMappings = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwables.throwIfInstanceOf(e.getCause(), Exception.class);
+                    Throwables.throwIfUnchecked(e.getCause());
+                    throw e;
+                }
+
+                for (EntryTreeNode<EntryMapping> node : fileMappings) {
+                    if (node.getValue() != null) {
+                        mappings.insert(node.getEntry(), node.getValue());
+                    }
+                }
+                progress.step(i + 1, dir.relativize(files.get(i)).toString());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return mappings;
+    }
+
+    /**
+     * @return the {@code .mapping} files in the directory and its subdirectories, except hidden ones, in order of their paths
+     */
+    public static List<Path> listMappingFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            List<Path> result = new ArrayList<>();
+            for (Path file : files.filter(f -> !Files.isDirectory(f) && f.toString().endsWith(".mapping")).collect(Collectors.toList())) {
+                if (!Files.isHidden(file)) {
+                    result.add(file);
+                }
+            }
+
+            Collections.sort(result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Memory-mapped ZIP reader that gives access to the compressed bytes of every entry,
+ * which {@link java.util.zip.ZipFile} doesn't, so entries can be copied into another
+ * archive without inflating and deflating them again. ZIP64 and encrypted entries are
+ * not supported.
+ */
+public final class RawZipFile {
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+    private final ByteBuffer buffer;
+    private final List<Entry> entries;
+
+    private RawZipFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.entries = Collections.unmodifiableList(readCentralDirectory());
+    }
+
+    public static RawZipFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new ZipException(path + " is too large");
+            }
+            return new RawZipFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return the entries, in the order of the central directory
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        int end = -1;
+        for (int i = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; i >= Math.max(0, buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE - 0xFFFF); i--) {
+            if (buffer.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("End of central directory not found");
+        }
+
+        int count = Short.toUnsignedInt(buffer.getShort(end + 10));
+        long offset = Integer.toUnsignedLong(buffer.getInt(end + 16));
+        if (count == 0xFFFF || offset == 0xFFFFFFFFL) {
+            throw new ZipException("ZIP64 is not supported");
+        }
+
+        List<Entry> result = new ArrayList<>(count);
+        int position = (int) offset;
+        for (int i = 0; i < count; i++) {
+            if (buffer.getInt(position) != CENTRAL_HEADER) {
+                throw new ZipException("Invalid central directory header at " + position);
+            }
+
+            int flags = Short.toUnsignedInt(buffer.getShort(position + 8));
+            int nameLength = Short.toUnsignedInt(buffer.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(buffer.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(buffer.getShort(position + 32));
+            if ((flags & 1) != 0) {
+                throw new ZipException("Encrypted entries are not supported");
+            }
+
+            byte[] name = new byte[nameLength];
+            for (int j = 0; j < nameLength; j++) {
+                name[j] = buffer.get(position + 46 + j);
+            }
+
+            result.add(new Entry(
+                    new String(name, StandardCharsets.UTF_8),
+                    Short.toUnsignedInt(buffer.getShort(position + 10)),
+                    buffer.getInt(position + 12),
+                    buffer.getInt(position + 16),
+                    buffer.getInt(position + 20),
+                    buffer.getInt(position + 24),
+                    buffer.getInt(position + 42)));
+
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+
+        return result;
+    }
+
+    public final class Entry {
+        private final String name;
+        private final int method;
+        private final int dosTime;
+        private final int crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private Entry(String name, int method, int dosTime, int crc, int compressedSize, int size, int localHeaderOffset) throws ZipException {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = Integer.toUnsignedLong(compressedSize);
+            this.size = Integer.toUnsignedLong(size);
+            this.localHeaderOffset = Integer.toUnsignedLong(localHeaderOffset);
+
+            if (this.compressedSize == 0xFFFFFFFFL || this.size == 0xFFFFFFFFL || this.localHeaderOffset == 0xFFFFFFFFL) {
+                throw new ZipException("ZIP64 is not supported");
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        int getMethod() {
+            return method;
+        }
+
+        int getDosTime() {
+            return dosTime;
+        }
+
+        int getCrc() {
+            return crc;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the entry's data as stored in the archive
+         */
+        ByteBuffer getRawData() throws ZipException {
+            int header = (int) localHeaderOffset;
+            if (buffer.getInt(header) != LOCAL_HEADER) {
+                throw new ZipException("Invalid local header for " + name);
+            }
+
+            int start = header + 30 + Short.toUnsignedInt(buffer.getShort(header + 26)) + Short.toUnsignedInt(buffer.getShort(header + 28));
+            ByteBuffer data = buffer.duplicate();
+            data.position(start).limit((int) (start + compressedSize));
+            return data.slice();
+        }
+
+        public byte[] getContent() throws IOException {
+            ByteBuffer raw = getRawData();
+            byte[] compressed = new byte[raw.remaining()];
+            raw.get(compressed);
+
+            if (method == STORED) {
+                return compressed;
+            } else if (method != DEFLATED) {
+                throw new ZipException("Unsupported compression method " + method + " for " + name);
+            }
+
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed);
+                byte[] content = new byte[(int) size];
+                int length = 0;
+                while (length < content.length && !inflater.finished()) {
+                    int read = inflater.inflate(content, length, content.length - length);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += read;
+                }
+
+                if (length != content.length) {
+                    throw new ZipException("Truncated entry " + name);
+                }
+                return content;
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid deflate data for " + name + ": " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a ZIP archive from entries that are already compressed, either copied from a
+ * {@link RawZipFile} or compressed up front with {@link #compress}, which can run on
+ * any thread. The archive only depends on the entries and the order they are written in.
+ */
+public final class RawZipWriter implements Closeable {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int UTF8_FLAG = 1 << 11;
+
+    private final OutputStream out;
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private long offset;
+    private int count;
+
+    public RawZipWriter(Path path) throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+    }
+
+    /**
+     * Copies an entry under a new name without recompressing it.
+     */
+    public void copy(String name, RawZipFile.Entry entry) throws IOException {
+        write(name, entry.getDosTime(), new Data(entry.getMethod(), entry.getCrc(), entry.getSize(), entry.getRawData()));
+    }
+
+    public void write(String name, int dosTime, Data data) throws IOException {
+        if (offset > 0xFFFFFFFFL || count == 0xFFFF) {
+            throw new ZipException("ZIP64 is not supported");
+        }
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int flags = nameBytes.length != name.length() ? UTF8_FLAG : 0;
+        int version = data.method == RawZipFile.DEFLATED ? 20 : 10;
+
+        ByteBuffer header = ByteBuffer.allocate(46 + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER).putShort((short) version).putShort((short) flags).putShort((short) data.method)
+                .putInt(dosTime).putInt(data.crc).putInt(data.bytes.remaining()).putInt((int) data.size)
+                .putShort((short) nameBytes.length).putShort((short) 0).put(nameBytes);
+        out.write(header.array(), 0, header.position());
+
+        header.clear();
+        header.putInt(CENTRAL_HEADER).putShort((short) 20).putShort((short) version).putShort((short) flags).putShort((short) data.method)
+                .putInt(dosTime).putInt(data.crc).putInt(data.bytes.remaining()).putInt((int) data.size)
+                .putShort((short) nameBytes.length).putShort((short) 0).putShort((short) 0)
+                .putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) offset).put(nameBytes);
+        centralDirectory.write(header.array(), 0, header.position());
+
+        offset += 30 + nameBytes.length + data.bytes.remaining();
+        count++;
+
+        ByteBuffer bytes = data.bytes.duplicate();
+        byte[] chunk = new byte[Math.min(bytes.remaining(), 1 << 16)];
+        while (bytes.hasRemaining()) {
+            int length = Math.min(chunk.length, bytes.remaining());
+            bytes.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (offset > 0xFFFFFFFFL) {
+                throw new ZipException("ZIP64 is not supported");
+            }
+
+            centralDirectory.writeTo(out);
+
+            ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(END_OF_CENTRAL_DIRECTORY).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) count).putShort((short) count)
+                    .putInt(centralDirectory.size()).putInt((int) offset).putShort((short) 0);
+            out.write(end.array());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Deflates the content, or stores it if that is smaller.
+     */
+    public static Data compress(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+
+            if (compressed.size() < content.length) {
+                return new Data(RawZipFile.DEFLATED, (int) crc.getValue(), content.length, ByteBuffer.wrap(compressed.toByteArray()));
+            } else {
+                return new Data(RawZipFile.STORED, (int) crc.getValue(), content.length, ByteBuffer.wrap(content));
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static final class Data {
+        private final int method;
+        private final int crc;
+        private final long size;
+        private final ByteBuffer bytes;
+
+        private Data(int method, int crc, long size, ByteBuffer bytes) {
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Groups values by key, holding at most a given number of them in memory: beyond that,
+ * the values held are sorted by key and spilled to a temporary file, and the files are
+ * merged at the end.
+ *
+ * Groups come out in key order, each with its values in the order they were added.
+ * The sort is stable and the merge takes values of equal keys from earlier files
+ * first, which together keep that order without storing it.
+ */
+public final class SpillingGrouper implements Closeable {
+    private static final Comparator<String[]> BY_KEY = Comparator.comparing(pair -> pair[0]);
+
+    private final int threshold;
+    private final List<String[]> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+
+    public interface GroupConsumer {
+        void accept(String key, List<String> values) throws IOException;
+    }
+
+    /**
+     * @param threshold the number of values held in memory before spilling
+     */
+    public SpillingGrouper(int threshold) {
+        this.threshold = Math.max(1, threshold);
+    }
+
+    public void add(String key, String value) throws IOException {
+        buffer.add(new String[] { key, value });
+        if (buffer.size() >= threshold) {
+            spill();
+        }
+    }
+
+    /**
+     * @return the number of temporary files written so far
+     */
+    public int getSpillCount() {
+        return runs.size();
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(BY_KEY);
+
+        Path run = Files.createTempFile("weave-group", ".tmp");
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            for (String[] pair : buffer) {
+                writeString(out, pair[0]);
+                writeString(out, pair[1]);
+            }
+        }
+
+        buffer.clear();
+    }
+
+    public void forEachGroup(GroupConsumer consumer) throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort(BY_KEY);
+
+            int start = 0;
+            while (start < buffer.size()) {
+                String key = buffer.get(start)[0];
+                List<String> values = new ArrayList<>();
+                int end = start;
+                for (; end < buffer.size() && buffer.get(end)[0].equals(key); end++) {
+                    values.add(buffer.get(end)[1]);
+                }
+
+                consumer.accept(key, values);
+                start = end;
+            }
+            return;
+        }
+
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+
+        List<Run> inputs = new ArrayList<>();
+        try {
+            PriorityQueue<Run> queue = new PriorityQueue<>(Comparator.<Run, String>comparing(run -> run.key).thenComparingInt(run -> run.index));
+            for (int i = 0; i < runs.size(); i++) {
+                Run run = new Run(i, new DataInputStream(new BufferedInputStream(Files.newInputStream(runs.get(i)), 1 << 16)));
+                inputs.add(run);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+
+            String key = null;
+            List<String> values = new ArrayList<>();
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                if (key != null && !key.equals(run.key)) {
+                    consumer.accept(key, values);
+                    values = new ArrayList<>();
+                }
+
+                key = run.key;
+                values.add(run.value);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+
+            if (key != null) {
+                consumer.accept(key, values);
+            }
+        } finally {
+            for (Run run : inputs) {
+                run.in.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.clear();
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Run {
+        private final int index;
+        private final DataInputStream in;
+        private String key;
+        private String value;
+
+        private Run(int index, DataInputStream in) {
+            this.index = index;
+            this.in = in;
+        }
+
+        private boolean advance() throws IOException {
+            try {
+                key = readString(in);
+            } catch (EOFException e) {
+                return false;
+            }
+            value = readString(in);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,684 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only index of a Tiny v1 or v2 file, for looking names up in any direction
+ * without Enigma.
+ *
+ * The file is memory-mapped and every distinct name or descriptor is stored once, as
+ * a range of the mapped file; strings are only created for the results of lookups.
+ * Classes, fields and methods are arrays of string ids, with one hash index per
+ * namespace. Member descriptors are kept in the first namespace, as in the file.
+ *
+ * Only class, field and method names are read; v2 parameters, locals, comments and
+ * properties are skipped, and escaped names are not unescaped.
+ */
+public final class TinyMappings {
+    private final List<String> namespaces;
+    private final Strings strings;
+
+    private int classCount;
+    private int[][] classNames;
+
+    private final MemberTable fields;
+    private final MemberTable methods;
+
+    private final LongIndex[] classIndex;
+
+    private TinyMappings(List<String> namespaces, Strings strings) {
+        this.namespaces = namespaces;
+        this.strings = strings;
+        this.classNames = new int[namespaces.size()][64];
+        this.fields = new MemberTable(namespaces.size());
+        this.methods = new MemberTable(namespaces.size());
+        this.classIndex = new LongIndex[namespaces.size()];
+    }
+
+    public static TinyMappings read(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to map");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        return new Parser(buffer).parse();
+    }
+
+    public List<String> getNamespaces() {
+        return namespaces;
+    }
+
+    /**
+     * @return the index of the namespace, or -1 if the file doesn't have it
+     */
+    public int getNamespace(String name) {
+        return namespaces.indexOf(name);
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    public int getFieldCount() {
+        return fields.count;
+    }
+
+    public int getMethodCount() {
+        return methods.count;
+    }
+
+    public String getClassName(int index, int namespace) {
+        return strings.get(classNames[namespace][index]);
+    }
+
+    /**
+     * @return the fields of the class with the given index, in file order
+     */
+    public List<Member> getFields(int classIndex) {
+        return getMembers(fields, classIndex);
+    }
+
+    /**
+     * @return the methods of the class with the given index, in file order
+     */
+    public List<Member> getMethods(int classIndex) {
+        return getMembers(methods, classIndex);
+    }
+
+    private List<Member> getMembers(MemberTable table, int classIndex) {
+        List<Member> result = new ArrayList<>();
+        for (int i = table.ownerIndex.first(classIndex); i >= 0; i = table.ownerIndex.next(i)) {
+            result.add(new Member(table, i));
+        }
+
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * @return the class name in namespace {@code to}, or null if the file doesn't have the class
+     */
+    public String mapClass(String name, int from, int to) {
+        int index = findClass(name, from);
+        return index >= 0 ? strings.get(classNames[to][index]) : null;
+    }
+
+    /**
+     * Maps every class name in a field or method descriptor; unknown classes are kept.
+     */
+    public String mapDesc(String desc, int from, int to) {
+        if (from == to || desc.indexOf('L') < 0) {
+            return desc;
+        }
+
+        StringBuilder builder = new StringBuilder(desc.length());
+        int i = 0;
+        while (i < desc.length()) {
+            char c = desc.charAt(i);
+            int end = c == 'L' ? desc.indexOf(';', i) : -1;
+
+            if (end < 0) {
+                builder.append(c);
+                i++;
+            } else {
+                String name = desc.substring(i + 1, end);
+                String mapped = mapClass(name, from, to);
+                builder.append('L').append(mapped != null ? mapped : name).append(';');
+                i = end + 1;
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @param desc the descriptor in namespace {@code from}, or null to match every descriptor
+     */
+    public List<Member> findFields(String owner, String name, String desc, int from) {
+        return find(fields, owner, name, desc, from);
+    }
+
+    /**
+     * @param desc the descriptor in namespace {@code from}, or null to match every descriptor
+     */
+    public List<Member> findMethods(String owner, String name, String desc, int from) {
+        return find(methods, owner, name, desc, from);
+    }
+
+    /**
+     * @return the mappings from namespace {@code from} to namespace {@code to}
+     */
+    public NameMapper toNameMapper(int from, int to) {
+        return new NameMapper() {
+            @Override
+            public String mapClass(String name) {
+                String mapped = TinyMappings.this.mapClass(name, from, to);
+                if (mapped != null) {
+                    return mapped;
+                }
+
+                // inner classes without a mapping of their own have no line, but are renamed with the class they are nested in
+                for (int split = name.lastIndexOf('$'); split > 0; split = name.lastIndexOf('$', split - 1)) {
+                    String outer = TinyMappings.this.mapClass(name.substring(0, split), from, to);
+                    if (outer != null) {
+                        return outer + name.substring(split);
+                    }
+                }
+
+                return null;
+            }
+
+            @Override
+            public String mapField(String owner, String name, String desc) {
+                List<Member> members = findFields(owner, name, desc, from);
+                return members.isEmpty() ? null : members.get(0).getName(to);
+            }
+
+            @Override
+            public String mapMethod(String owner, String name, String desc) {
+                List<Member> members = findMethods(owner, name, desc, from);
+                return members.isEmpty() ? null : members.get(0).getName(to);
+            }
+        };
+    }
+
+    private int findClass(String name, int namespace) {
+        int id = strings.find(name);
+        return id >= 0 ? classIndex[namespace].first(id) : -1;
+    }
+
+    private List<Member> find(MemberTable table, String owner, String name, String desc, int from) {
+        int ownerIndex = findClass(owner, from);
+        int nameId = strings.find(name);
+        if (ownerIndex < 0 || nameId < 0) {
+            return Collections.emptyList();
+        }
+
+        String desc0 = desc != null ? mapDesc(desc, from, 0) : null;
+        List<Member> result = new ArrayList<>();
+
+        LongIndex index = table.index[from];
+        for (int i = index.first(key(classNames[from][ownerIndex], nameId)); i >= 0; i = index.next(i)) {
+            if (desc0 == null || strings.equals(table.descs[i], desc0)) {
+                result.add(new Member(table, i));
+            }
+        }
+
+        result.sort((a, b) -> Integer.compare(a.index, b.index));
+        return result;
+    }
+
+    private static long key(int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    private int addClass(int[] names) {
+        if (classCount == classNames[0].length) {
+            for (int ns = 0; ns < classNames.length; ns++) {
+                classNames[ns] = Arrays.copyOf(classNames[ns], classCount * 2);
+            }
+        }
+
+        for (int ns = 0; ns < classNames.length; ns++) {
+            classNames[ns][classCount] = names[ns];
+        }
+        return classCount++;
+    }
+
+    private void buildIndex() {
+        for (int ns = 0; ns < namespaces.size(); ns++) {
+            classIndex[ns] = new LongIndex(classCount);
+            for (int i = 0; i < classCount; i++) {
+                classIndex[ns].add(classNames[ns][i], i);
+            }
+        }
+
+        fields.buildIndex(classNames);
+        methods.buildIndex(classNames);
+    }
+
+    /**
+     * A field or method of the file.
+     */
+    public final class Member {
+        private final MemberTable table;
+        private final int index;
+
+        private Member(MemberTable table, int index) {
+            this.table = table;
+            this.index = index;
+        }
+
+        public String getOwner(int namespace) {
+            return strings.get(classNames[namespace][table.owners[index]]);
+        }
+
+        public String getName(int namespace) {
+            return strings.get(table.names[namespace][index]);
+        }
+
+        public String getDesc(int namespace) {
+            return mapDesc(strings.get(table.descs[index]), 0, namespace);
+        }
+    }
+
+    private static final class MemberTable {
+        private int count;
+        private int[] owners = new int[64];
+        private int[] descs = new int[64];
+        private final int[][] names;
+        private final LongIndex[] index;
+        private LongIndex ownerIndex;
+
+        private MemberTable(int namespaceCount) {
+            names = new int[namespaceCount][64];
+            index = new LongIndex[namespaceCount];
+        }
+
+        private void add(int owner, int desc, int[] memberNames) {
+            if (count == owners.length) {
+                owners = Arrays.copyOf(owners, count * 2);
+                descs = Arrays.copyOf(descs, count * 2);
+                for (int ns = 0; ns < names.length; ns++) {
+                    names[ns] = Arrays.copyOf(names[ns], count * 2);
+                }
+            }
+
+            owners[count] = owner;
+            descs[count] = desc;
+            for (int ns = 0; ns < names.length; ns++) {
+                names[ns][count] = memberNames[ns];
+            }
+            count++;
+        }
+
+        private void buildIndex(int[][] classNames) {
+            ownerIndex = new LongIndex(count);
+            for (int i = 0; i < count; i++) {
+                ownerIndex.add(owners[i], i);
+            }
+
+            for (int ns = 0; ns < names.length; ns++) {
+                index[ns] = new LongIndex(count);
+                for (int i = 0; i < count; i++) {
+                    index[ns].add(key(classNames[ns][owners[i]], names[ns][i]), i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Open addressing from a long key to the values added for it, chained through an
+     * array indexed by value; values must be below the capacity given on creation.
+     */
+    private static final class LongIndex {
+        private final long[] keys;
+        private final int[] heads;
+        private final int[] next;
+        private final int mask;
+
+        private LongIndex(int capacity) {
+            int size = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) * 2;
+            keys = new long[size];
+            heads = new int[size];
+            next = new int[Math.max(capacity, 1)];
+            mask = size - 1;
+            Arrays.fill(heads, -1);
+        }
+
+        private int slot(long key) {
+            int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+            while (heads[slot] >= 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Values are added in increasing order, so each chain is kept in reverse.
+         */
+        private void add(long key, int value) {
+            int slot = slot(key);
+            keys[slot] = key;
+            next[value] = heads[slot];
+            heads[slot] = value;
+        }
+
+        private int first(long key) {
+            return heads[slot(key)];
+        }
+
+        private int next(int value) {
+            return next[value];
+        }
+    }
+
+    /**
+     * Interned byte ranges of the mapped file.
+     */
+    private static final class Strings {
+        private final ByteBuffer buffer;
+        private int count;
+        private int[] starts = new int[1024];
+        private int[] lengths = new int[1024];
+        private int[] hashes = new int[1024];
+        private String[] values = new String[1024];
+        private int[] slots = new int[2048];
+
+        private Strings(ByteBuffer buffer) {
+            this.buffer = buffer;
+            Arrays.fill(slots, -1);
+        }
+
+        private int intern(int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = hash * 31 + buffer.get(i);
+            }
+
+            int mask = slots.length - 1;
+            int slot = mix(hash) & mask;
+            for (int id; (id = slots[slot]) >= 0; slot = (slot + 1) & mask) {
+                if (hashes[id] == hash && rangeEquals(starts[id], lengths[id], start, end - start)) {
+                    return id;
+                }
+            }
+
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+                hashes = Arrays.copyOf(hashes, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+
+            int id = count++;
+            starts[id] = start;
+            lengths[id] = end - start;
+            hashes[id] = hash;
+            slots[slot] = id;
+
+            if (count * 2 > slots.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            Arrays.fill(slots, -1);
+            int mask = slots.length - 1;
+
+            for (int id = 0; id < count; id++) {
+                int slot = mix(hashes[id]) & mask;
+                while (slots[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = id;
+            }
+        }
+
+        /**
+         * @return the id of the string, or -1 if the file doesn't contain it
+         */
+        private int find(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            int hash = 0;
+            for (byte b : bytes) {
+                hash = hash * 31 + b;
+            }
+
+            int mask = slots.length - 1;
+            for (int slot = mix(hash) & mask, id; (id = slots[slot]) >= 0; slot = (slot + 1) & mask) {
+                if (hashes[id] == hash && lengths[id] == bytes.length && bytesEqual(starts[id], bytes)) {
+                    return id;
+                }
+            }
+
+            return -1;
+        }
+
+        private boolean equals(int id, String s) {
+            return get(id).equals(s);
+        }
+
+        private String get(int id) {
+            String value = values[id];
+            if (value == null) {
+                byte[] bytes = new byte[lengths[id]];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = buffer.get(starts[id] + i);
+                }
+                values[id] = value = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return value;
+        }
+
+        private boolean rangeEquals(int a, int aLength, int b, int bLength) {
+            if (aLength != bLength) {
+                return false;
+            }
+            for (int i = 0; i < aLength; i++) {
+                if (buffer.get(a + i) != buffer.get(b + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean bytesEqual(int start, byte[] bytes) {
+            for (int i = 0; i < bytes.length; i++) {
+                if (buffer.get(start + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private static final class Parser {
+        private final ByteBuffer buffer;
+        private final Strings strings;
+        private int position;
+
+        // bounds of the fields of the current line
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int fieldCount;
+
+        private TinyMappings mappings;
+        private int namespaceCount;
+        private int[] names;
+        // class index + 1 by string id of the name in the first namespace
+        private int[] classesByName = new int[1024];
+
+        private Parser(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.strings = new Strings(buffer);
+        }
+
+        private TinyMappings parse() throws IOException {
+            if (!nextLine()) {
+                throw new IOException("Empty Tiny file");
+            }
+
+            boolean v2;
+            int firstNamespace;
+            if (fieldIs(0, "v1")) {
+                v2 = false;
+                firstNamespace = 1;
+            } else if (fieldIs(0, "tiny") && fieldCount > 3 && fieldIs(1, "2")) {
+                v2 = true;
+                firstNamespace = 3;
+            } else {
+                throw new IOException("Unsupported Tiny header");
+            }
+
+            List<String> namespaces = new ArrayList<>();
+            for (int i = firstNamespace; i < fieldCount; i++) {
+                namespaces.add(strings.get(field(i)));
+            }
+            if (namespaces.isEmpty()) {
+                throw new IOException("Tiny file without namespaces");
+            }
+
+            mappings = new TinyMappings(Collections.unmodifiableList(namespaces), strings);
+            namespaceCount = namespaces.size();
+            names = new int[namespaceCount];
+
+            int currentClass = -1;
+            while (nextLine()) {
+                if (v2) {
+                    if (fieldCount >= 2 && fieldIs(0, "c")) {
+                        currentClass = getClass(readNames(1));
+                    } else if (currentClass >= 0 && fieldCount >= 4 && length(0) == 0 && (fieldIs(1, "f") || fieldIs(1, "m"))) {
+                        MemberTable table = fieldIs(1, "f") ? mappings.fields : mappings.methods;
+                        int desc = field(2);
+                        table.add(currentClass, desc, readNames(3));
+                    }
+                } else if (fieldCount >= 2 && fieldIs(0, "CLASS")) {
+                    getClass(readNames(1));
+                } else if (fieldCount >= 4 && (fieldIs(0, "FIELD") || fieldIs(0, "METHOD"))) {
+                    MemberTable table = fieldIs(0, "FIELD") ? mappings.fields : mappings.methods;
+                    int owner = field(1);
+                    int desc = field(2);
+                    int[] memberNames = readNames(3);
+
+                    Arrays.fill(names, owner);
+                    table.add(getClass(null), desc, memberNames);
+                }
+            }
+
+            mappings.buildIndex();
+            return mappings;
+        }
+
+        /**
+         * Names missing from the line are the name in the first namespace.
+         */
+        private int[] readNames(int first) {
+            int[] result = new int[namespaceCount];
+            for (int ns = 0; ns < namespaceCount; ns++) {
+                int i = first + ns;
+                result[ns] = i < fieldCount && length(i) > 0 ? field(i) : result[0];
+            }
+            return result;
+        }
+
+        /**
+         * Finds or adds the class named {@code classNames[0]}; a class line for a class
+         * already added as a member owner gives it its names.
+         *
+         * @param classNames the class names, or null to use {@link #names} and only add missing classes
+         */
+        private int getClass(int[] classNames) {
+            int[] lookup = classNames != null ? classNames : names;
+            int id = lookup[0];
+
+            if (id >= classesByName.length) {
+                classesByName = Arrays.copyOf(classesByName, Math.max(id + 1, classesByName.length * 2));
+            }
+
+            int index = classesByName[id] - 1;
+            if (index < 0) {
+                index = mappings.addClass(lookup);
+                classesByName[id] = index + 1;
+            } else if (classNames != null) {
+                for (int ns = 0; ns < namespaceCount; ns++) {
+                    mappings.classNames[ns][index] = classNames[ns];
+                }
+            }
+
+            return index;
+        }
+
+        private boolean nextLine() {
+            int limit = buffer.limit();
+            if (position >= limit) {
+                return false;
+            }
+
+            fieldCount = 0;
+            int start = position;
+            while (true) {
+                byte b = position < limit ? buffer.get(position) : (byte) '\n';
+                if (b == '\t' || b == '\n') {
+                    int end = position;
+                    if (b == '\n' && end > start && buffer.get(end - 1) == '\r') {
+                        end--;
+                    }
+                    addField(start, end);
+                    position++;
+                    start = position;
+
+                    if (b == '\n') {
+                        return true;
+                    }
+                } else {
+                    position++;
+                }
+            }
+        }
+
+        private void addField(int start, int end) {
+            if (fieldCount == starts.length) {
+                starts = Arrays.copyOf(starts, fieldCount * 2);
+                ends = Arrays.copyOf(ends, fieldCount * 2);
+            }
+            starts[fieldCount] = start;
+            ends[fieldCount] = end;
+            fieldCount++;
+        }
+
+        private int length(int field) {
+            return ends[field] - starts[field];
+        }
+
+        private int field(int field) {
+            return strings.intern(starts[field], ends[field]);
+        }
+
+        private boolean fieldIs(int field, String value) {
+            if (length(field) != value.length()) {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                if (buffer.get(starts[field] + i) != value.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
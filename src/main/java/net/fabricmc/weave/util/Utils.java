@@ -18,8 +18,13 @@ package net.fabricmc.weave.util;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
 import org.objectweb.asm.commons.Remapper;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
 import java.util.*;
 
 public final class Utils {
@@ -33,6 +38,7 @@ public final class Utils {
 			}
 		}
 	};
+	private static final String NONE_PREFIX = "none/";
 	public static final Joiner TAB_JOINER = Joiner.on('\t');
 	public static final Splitter TAB_SPLITTER = Splitter.on('\t');
 
@@ -44,29 +50,93 @@ public final class Utils {
 		return new Date().getTime();
 	}
 
-	public static List<String> mergePreserveOrder(List<String> first, List<String> second) {
-		List<String> out = new ArrayList<>();
+	public static String quoteJson(String s) {
+		StringBuilder builder = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			} else if (c < 0x20) {
+				builder.append(String.format("\\u%04x", (int) c));
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.append('"').toString();
+	}
+
+	public static String sha256(Path path) throws IOException {
+		return MoreFiles.asByteSource(path).hash(Hashing.sha256()).toString();
+	}
 
+	/**
+	 * Appends an internal class name without its "none/" prefix, like {@link #NONE_PREFIX_REMOVER}'s map.
+	 */
+	public static void appendWithoutNone(Appendable out, String name) throws IOException {
+		int start = name.startsWith(NONE_PREFIX) ? NONE_PREFIX.length() : 0;
+		append(out, name, start, name.length());
+	}
+
+	/**
+	 * Appends a field or method descriptor with the "none/" prefix removed from every
+	 * class name in it, like {@link #NONE_PREFIX_REMOVER}'s mapDesc and mapMethodDesc, in
+	 * one scan and without creating intermediate strings.
+	 */
+	public static void appendDescWithoutNone(Appendable out, String desc) throws IOException {
+		int copied = 0;
 		int i = 0;
-		int j = 0;
-		while (i < first.size() || j < second.size()) {
-			while (i < first.size() && j < second.size()
-					&& first.get(i).equals(second.get(j))) {
-				out.add(first.get(i));
+
+		while (i < desc.length()) {
+			if (desc.charAt(i) != 'L') {
 				i++;
-				j++;
+				continue;
 			}
 
-			while (i < first.size() && !second.contains(first.get(i))) {
-				out.add(first.get(i));
-				i++;
+			int end = desc.indexOf(';', i);
+			if (end < 0) {
+				break;
 			}
 
-			while (j < second.size() && !first.contains(second.get(j))) {
-				out.add(second.get(j));
-				j++;
+			if (desc.startsWith(NONE_PREFIX, i + 1)) {
+				append(out, desc, copied, i + 1);
+				copied = i + 1 + NONE_PREFIX.length();
 			}
+			i = end + 1;
 		}
-		return out;
+
+		append(out, desc, copied, desc.length());
+	}
+
+	public static String removeNone(String name) {
+		return name.startsWith(NONE_PREFIX) ? name.substring(NONE_PREFIX.length()) : name;
+	}
+
+	public static String removeNoneFromDesc(String desc) {
+		if (!desc.contains(NONE_PREFIX)) {
+			return desc;
+		}
+
+		StringBuilder builder = new StringBuilder(desc.length());
+		try {
+			appendDescWithoutNone(builder, desc);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		return builder.toString();
+	}
+
+	// Writer.append(CharSequence, int, int) copies the range into a new string first
+	private static void append(Appendable out, String s, int start, int end) throws IOException {
+		if (start == end) {
+			return;
+		} else if (out instanceof Writer) {
+			((Writer) out).write(s, start, end - start);
+		} else {
+			out.append(s, start, end);
+		}
+	}
+
+	public static List<String> mergePreserveOrder(List<String> first, List<String> second) {
+		return OrderedMerge.merge(first, second);
 	}
 }
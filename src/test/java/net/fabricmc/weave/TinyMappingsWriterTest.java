@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TinyMappingsWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shardedOutputMatchesSingleThreaded() throws IOException {
+        // enough classes for more shards than the writer keeps in flight
+        EntryTree<EntryMapping> mappings = SyntheticInput.generate(5000, 42).getMappings();
+        Path single = folder.getRoot().toPath().resolve("single.tiny");
+        Path sharded = folder.getRoot().toPath().resolve("sharded.tiny");
+
+        String singleHash = new TinyMappingsWriter("official", "named", 1).writeFile(mappings, single, ProgressListener.none());
+        String shardedHash = new TinyMappingsWriter("official", "named", 4).writeFile(mappings, sharded, ProgressListener.none());
+
+        assertArrayEquals(Files.readAllBytes(single), Files.readAllBytes(sharded));
+        assertEquals(singleHash, shardedHash);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryMappingsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write() throws IOException {
+        BinaryMappings.Builder builder = new BinaryMappings.Builder("official", "named");
+        builder.addClass("a", "none/net/example/Foo");
+        builder.addClass("b", "net/example/Bar");
+        builder.addField("a", "a", "I", "count");
+        builder.addField("a", "b", "Lnone/b;", "bar");
+        builder.addMethod("a", "a", "()V", "run");
+        builder.addMethod("a", "a", "(I)V", "runTimes");
+        builder.addMethod("c", "a", "()La;", "getFoo");
+
+        Path path = folder.getRoot().toPath().resolve("mappings.bin");
+        builder.write(path);
+        return path;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        BinaryMappings mappings = BinaryMappings.read(write());
+
+        assertEquals(Arrays.asList("official", "named"), mappings.getNamespaces());
+        assertEquals(3, mappings.getClassCount());
+        assertEquals(2, mappings.getFieldCount());
+        assertEquals(3, mappings.getMethodCount());
+
+        assertEquals("net/example/Foo", mappings.mapClass("a"));
+        assertEquals("net/example/Bar", mappings.mapClass("b"));
+        // only has a member mapping, so keeps its name
+        assertEquals("c", mappings.mapClass("c"));
+        assertNull(mappings.mapClass("d"));
+
+        assertEquals("count", mappings.mapField("a", "a", "I"));
+        assertEquals("bar", mappings.mapField("a", "b", "Lb;"));
+        assertNull(mappings.mapField("a", "a", "J"));
+        assertNull(mappings.mapField("b", "a", "I"));
+
+        assertEquals("run", mappings.mapMethod("a", "a", "()V"));
+        assertEquals("runTimes", mappings.mapMethod("a", "a", "(I)V"));
+        assertEquals("getFoo", mappings.mapMethod("c", "a", "()La;"));
+        assertNull(mappings.mapMethod("a", "b", "()V"));
+        assertNull(mappings.mapMethod("b", "a", "()V"));
+    }
+
+    @Test
+    public void truncatedFile() throws IOException {
+        Path path = write();
+        byte[] content = Files.readAllBytes(path);
+
+        for (int length = 0; length < content.length; length++) {
+            Files.write(path, Arrays.copyOf(content, length));
+            try {
+                BinaryMappings.read(path);
+                fail("Read a file truncated to " + length + " of " + content.length + " bytes");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void wrongVersion() throws IOException {
+        Path path = write();
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(path));
+        content.putInt(4, content.getInt(4) + 1);
+        Files.write(path, content.array());
+
+        try {
+            BinaryMappings.read(path);
+            fail("Read a file of another version");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Unsupported binary mapping version"));
+        }
+    }
+}
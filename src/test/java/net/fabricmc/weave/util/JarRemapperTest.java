@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.weave.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class JarRemapperTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void unmappedInnerClassesFollowTheirOuterClass() throws IOException {
+        Path input = folder.getRoot().toPath().resolve("input.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(input))) {
+            writeClass(out, "a/Outer", null);
+            writeClass(out, "a/Outer$Inner", "La/Outer;");
+            writeClass(out, "a/Outer$Inner$Deep", "La/Outer$Inner;");
+            writeClass(out, "a/Other$Inner", null);
+        }
+
+        // like tinyify output, only the outer class has a line
+        Path mappings = folder.getRoot().toPath().resolve("mappings.tiny");
+        Files.write(mappings, "v1\tofficial\tnamed\nCLASS\ta/Outer\tx/Mine\n".getBytes(StandardCharsets.UTF_8));
+
+        Path output = folder.getRoot().toPath().resolve("output.jar");
+        new JarRemapper(TinyMappings.read(mappings).toNameMapper(0, 1), JarScan.scan(input, true)).remap(input, output);
+
+        try (JarFile jar = new JarFile(output.toFile())) {
+            List<String> names = new ArrayList<>();
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                names.add(entry.getName());
+            }
+            Collections.sort(names);
+
+            assertEquals("[a/Other$Inner.class, x/Mine$Inner$Deep.class, x/Mine$Inner.class, x/Mine.class]", names.toString());
+            assertEquals("Lx/Mine$Inner;", getFieldDesc(jar, "x/Mine$Inner$Deep.class"));
+        }
+    }
+
+    private static void writeClass(JarOutputStream out, String name, String fieldDesc) throws IOException {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        if (fieldDesc != null) {
+            writer.visitField(0, "outer", fieldDesc, null, null).visitEnd();
+        }
+        writer.visitEnd();
+
+        out.putNextEntry(new JarEntry(name + ".class"));
+        out.write(writer.toByteArray());
+        out.closeEntry();
+    }
+
+    private static String getFieldDesc(JarFile jar, String entry) throws IOException {
+        String[] desc = new String[1];
+        new ClassReader(jar.getInputStream(jar.getEntry(entry))).accept(new ClassVisitor(Opcodes.ASM7) {
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                desc[0] = descriptor;
+                return null;
+            }
+        }, 0);
+        return desc[0];
+    }
+}